@@ -0,0 +1,125 @@
+// AsyncConfig.java - Dedicated executors for outgoing email
+package com.paymentgateway.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.aop.interceptor.AsyncUncaughtExceptionHandler;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.AsyncConfigurer;
+import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+
+@Configuration
+@EnableAsync
+public class AsyncConfig implements AsyncConfigurer {
+
+    public static final String EMAIL_EXECUTOR = "emailExecutor";
+    public static final String OUTBOX_EXECUTOR = "outboxExecutor";
+
+    private static final Logger logger = LoggerFactory.getLogger(AsyncConfig.class);
+
+    // What to do when the email queue is full
+    public enum OverflowPolicy {
+        REJECT,       // throw back to the caller, which logs and carries on
+        DROP_OLDEST,  // discard the longest-waiting email to make room; it is lost, so opt-in only
+        CALLER_RUNS   // send on the request thread (old behaviour, no loss)
+    }
+
+    @Value("${app.email.dispatch.pool-size:4}")
+    private int poolSize;
+
+    @Value("${app.email.dispatch.queue-capacity:1000}")
+    private int queueCapacity;
+
+    // OTP and reset emails travel this queue too; a silently dropped one is a failed login
+    @Value("${app.email.dispatch.overflow-policy:CALLER_RUNS}")
+    private OverflowPolicy overflowPolicy;
+
+    @Value("${app.email.dispatch.shutdown-drain-seconds:30}")
+    private int shutdownDrainSeconds;
+
+    @Value("${app.email.outbox.send-threads:4}")
+    private int outboxThreads;
+
+    @Value("${app.email.outbox.send-queue-capacity:100}")
+    private int outboxQueueCapacity;
+
+    @Bean(name = EMAIL_EXECUTOR)
+    public ThreadPoolTaskExecutor emailExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        // Fixed pool: a bounded queue never grows the pool past core size anyway
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("email-");
+        executor.setRejectedExecutionHandler(rejectionHandler(overflowPolicy));
+        // Let queued emails go out before the context closes
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(shutdownDrainSeconds);
+        executor.initialize();
+
+        logger.info("📧 Email executor ready: poolSize={}, queueCapacity={}, overflowPolicy={}",
+                poolSize, queueCapacity, overflowPolicy);
+        return executor;
+    }
+
+    // Outbox deliveries only, so the poller never shares a queue with @Async sends. Abort on
+    // overflow: the poller hands a rejected row straight back to the table instead of waiting
+    // for a task that will never run.
+    @Bean(name = OUTBOX_EXECUTOR)
+    public ThreadPoolTaskExecutor outboxExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(outboxThreads);
+        executor.setMaxPoolSize(outboxThreads);
+        executor.setQueueCapacity(outboxQueueCapacity);
+        executor.setThreadNamePrefix("outbox-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(shutdownDrainSeconds);
+        executor.initialize();
+
+        logger.info("📧 Outbox executor ready: threads={}, queueCapacity={}", outboxThreads, outboxQueueCapacity);
+        return executor;
+    }
+
+    @Override
+    public AsyncUncaughtExceptionHandler getAsyncUncaughtExceptionHandler() {
+        return (ex, method, params) ->
+                logger.error("❌ Async task {} failed: {}", method.getName(), ex.getMessage(), ex);
+    }
+
+    private static RejectedExecutionHandler rejectionHandler(OverflowPolicy policy) {
+        switch (policy) {
+            case CALLER_RUNS:
+                return new ThreadPoolExecutor.CallerRunsPolicy();
+            case DROP_OLDEST:
+                return (task, pool) -> {
+                    if (pool.isShutdown()) {
+                        throw new RejectedExecutionException("Email executor is shut down");
+                    }
+                    // offer() instead of execute(): re-entering execute() would land back here
+                    // and recurse when the queue has no capacity or is refilled concurrently
+                    Runnable dropped = pool.getQueue().poll();
+                    if (dropped != null) {
+                        logger.warn("⚠️ Email queue full, dropped oldest pending email");
+                    }
+                    if (!pool.getQueue().offer(task)) {
+                        logger.warn("⚠️ Email queue still full after dropping, rejecting email");
+                        throw new RejectedExecutionException("Email queue is full");
+                    }
+                };
+            case REJECT:
+            default:
+                return (task, pool) -> {
+                    logger.warn("⚠️ Email queue full ({} pending), rejecting email", pool.getQueue().size());
+                    throw new RejectedExecutionException("Email queue is full");
+                };
+        }
+    }
+}
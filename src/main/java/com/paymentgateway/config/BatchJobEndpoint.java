@@ -0,0 +1,57 @@
+// BatchJobEndpoint.java - /actuator/batchjobs: progress of maintenance jobs, plus start and pause
+package com.paymentgateway.config;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import com.paymentgateway.service.BatchJobRunner;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// GET  /actuator/batchjobs           every job with its checkpoint
+// GET  /actuator/batchjobs/{name}    one job
+// POST /actuator/batchjobs/{name}    {"action":"start"|"restart"|"pause"}
+// SecurityConfig restricts /actuator/** to ADMIN; prod does not expose this endpoint by default.
+@Component
+@Endpoint(id = "batchjobs")
+public class BatchJobEndpoint {
+
+    private final BatchJobRunner batchJobRunner;
+
+    public BatchJobEndpoint(BatchJobRunner batchJobRunner) {
+        this.batchJobRunner = batchJobRunner;
+    }
+
+    @ReadOperation
+    public List<Map<String, Object>> jobs() {
+        return batchJobRunner.status();
+    }
+
+    @ReadOperation
+    public Map<String, Object> job(@Selector String name) {
+        return batchJobRunner.status(name);
+    }
+
+    @WriteOperation
+    public Map<String, Object> control(@Selector String name, @Nullable String action) {
+        String requested = action == null ? "start" : action;
+        boolean accepted = switch (requested) {
+            case "start" -> batchJobRunner.start(name, false);
+            case "restart" -> batchJobRunner.start(name, true);
+            case "pause" -> batchJobRunner.pause(name);
+            default -> false;
+        };
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("job", name);
+        result.put("action", requested);
+        result.put("accepted", accepted);
+        result.put("state", batchJobRunner.status(name));
+        return result;
+    }
+}
@@ -0,0 +1,40 @@
+// EmailCircuitEndpoint.java - /actuator/emailcircuit: breaker state and outbox backlog
+package com.paymentgateway.config;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+import com.paymentgateway.service.EmailCircuitBreaker;
+import com.paymentgateway.service.EmailOutboxService;
+
+import java.util.Map;
+
+@Component("emailCircuit")
+@Endpoint(id = "emailcircuit")
+public class EmailCircuitEndpoint implements HealthIndicator {
+
+    private final EmailCircuitBreaker circuitBreaker;
+    private final EmailOutboxService emailOutboxService;
+
+    public EmailCircuitEndpoint(EmailCircuitBreaker circuitBreaker, EmailOutboxService emailOutboxService) {
+        this.circuitBreaker = circuitBreaker;
+        this.emailOutboxService = emailOutboxService;
+    }
+
+    @ReadOperation
+    public Map<String, Object> circuit() {
+        Map<String, Object> details = circuitBreaker.snapshot();
+        details.put("pendingEmails", emailOutboxService.countPending());
+        details.put("deadEmails", emailOutboxService.countDead());
+        return details;
+    }
+
+    // Shown under /actuator/health; an open circuit degrades email only, so the app stays UP
+    @Override
+    public Health health() {
+        return Health.up().withDetails(circuitBreaker.snapshot()).build();
+    }
+}
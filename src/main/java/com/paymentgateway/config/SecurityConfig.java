@@ -1,30 +1,109 @@
 // SecurityConfig.java - Fixed circular dependency
 package com.paymentgateway.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.security.config.Customizer;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.config.annotation.authentication.configuration.AuthenticationConfiguration;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.DelegatingPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.CorsConfigurationSource;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
 
+import com.paymentgateway.service.BoundedPasswordEncoder;
+import com.paymentgateway.service.PasswordHashCalibrator;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @Configuration
 @EnableWebSecurity
 public class SecurityConfig {
 
+    private static final Logger logger = LoggerFactory.getLogger(SecurityConfig.class);
+
+    // Hashes are stored as {bcryptNN}$2a$NN$..., where NN is the cost they were made with.
+    // When the configured cost changes, every hash with another id is re-encoded on the
+    // user's next successful login (see PasswordRehashService), up or down.
+    private static final int MIN_BCRYPT_COST = 4;
+    private static final int MAX_BCRYPT_COST = 31;
+
+    // BCrypt on its own bounded pool (0 threads = one per core)
     @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    public PasswordEncoder passwordEncoder(@Value("${app.security.hashing.threads:0}") int threads,
+                                           @Value("${app.security.hashing.queue-capacity:64}") int queueCapacity,
+                                           @Value("${app.security.hashing.max-wait-ms:10000}") long maxWaitMs,
+                                           @Value("${app.security.hashing.bcrypt-strength:12}") int bcryptStrength,
+                                           @Value("${app.security.hashing.target-ms:250}") long targetMs,
+                                           @Value("${app.security.hashing.min-strength:10}") int minStrength,
+                                           @Value("${app.security.hashing.max-strength:14}") int maxStrength,
+                                           @Value("${app.security.hashing.accept-legacy-plaintext:false}") boolean acceptLegacyPlaintext,
+                                           MeterRegistry meterRegistry) {
+        // Pinned by default. 0 measures this machine at startup, which only suits a single
+        // node: nodes that calibrate differently would re-encode each other's hashes on login.
+        int cost;
+        if (bcryptStrength > 0) {
+            cost = bcryptStrength;
+        } else {
+            cost = PasswordHashCalibrator.calibrate(targetMs, minStrength, maxStrength);
+            logger.warn("⚠️ BCrypt cost {} was calibrated on this node; pin app.security.hashing.bcrypt-strength " +
+                    "when running more than one", cost);
+        }
+
+        Map<String, PasswordEncoder> encoders = new HashMap<>();
+        for (int c = MIN_BCRYPT_COST; c <= MAX_BCRYPT_COST; c++) {
+            encoders.put("bcrypt" + c, new BCryptPasswordEncoder(c));
+        }
+        DelegatingPasswordEncoder delegating = new DelegatingPasswordEncoder("bcrypt" + cost, encoders);
+        // Hashes written before the ids were introduced have no {prefix}
+        delegating.setDefaultPasswordEncoderForMatches(new LegacyPasswordEncoder(acceptLegacyPlaintext));
+
+        return new BoundedPasswordEncoder(delegating, threads, queueCapacity, maxWaitMs, meterRegistry);
+    }
+
+    // Matches unprefixed BCrypt hashes, and optionally plain text left over from early versions.
+    // Never used to encode; a successful match leads to a rehash into the current format.
+    private static final class LegacyPasswordEncoder implements PasswordEncoder {
+
+        private final BCryptPasswordEncoder bcrypt = new BCryptPasswordEncoder();
+        private final boolean acceptPlaintext;
+
+        LegacyPasswordEncoder(boolean acceptPlaintext) {
+            this.acceptPlaintext = acceptPlaintext;
+        }
+
+        @Override
+        public String encode(CharSequence rawPassword) {
+            throw new UnsupportedOperationException("Legacy encoder is for matching only");
+        }
+
+        @Override
+        public boolean matches(CharSequence rawPassword, String encodedPassword) {
+            if (encodedPassword == null || rawPassword == null) {
+                return false;
+            }
+            if (encodedPassword.startsWith("$2")) {
+                return bcrypt.matches(rawPassword, encodedPassword);
+            }
+            return acceptPlaintext && MessageDigest.isEqual(
+                    rawPassword.toString().getBytes(StandardCharsets.UTF_8),
+                    encodedPassword.getBytes(StandardCharsets.UTF_8));
+        }
     }
 
     @Bean
@@ -39,9 +118,15 @@ public class SecurityConfig {
             .csrf(csrf -> csrf.disable())
             .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
             .authorizeHttpRequests(authz -> authz
-                .requestMatchers("/**").permitAll() // Allow everything
+                // Bulk import and user search; credentials go through the AuthenticationManager
+                .requestMatchers("/api/admin/**").hasRole("ADMIN")
+                // Probes stay open; everything else under actuator can read internals or start jobs
+                .requestMatchers("/actuator/health/**", "/actuator/info").permitAll()
+                .requestMatchers("/actuator/**").hasRole("ADMIN")
+                .requestMatchers("/**").permitAll() // Allow everything else
                 .anyRequest().permitAll()
-            );
+            )
+            .httpBasic(Customizer.withDefaults());
 
         return http.build();
     }
@@ -0,0 +1,69 @@
+// UserSearchIndexes.java - Creates the admin-search indexes that @Index can't describe
+package com.paymentgateway.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// ddl-auto only knows plain column lists, so operator classes and partial indexes are
+// created here once the application is up. CONCURRENTLY keeps writes flowing while an index
+// builds; it can't run inside a transaction, which JdbcTemplate outside @Transactional isn't.
+// A build that fails (or a node killed mid-build) leaves an INVALID index that IF NOT EXISTS
+// then skips, so that case is logged and needs a manual DROP INDEX before the next start.
+@Component
+public class UserSearchIndexes {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserSearchIndexes.class);
+
+    private static final Map<String, String> INDEXES = new LinkedHashMap<>();
+
+    static {
+        // LIKE 'prefix%' on a non-C collation database only uses a text_pattern_ops index
+        INDEXES.put("idx_users_email_normalized_prefix",
+                "CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_users_email_normalized_prefix " +
+                "ON users (email_normalized text_pattern_ops)");
+        // "Not activated" is is_active = FALSE or NULL, two ranges of (is_active, created_at, id)
+        // that can't be read in one ordered scan; this index holds exactly those rows
+        INDEXES.put("idx_users_inactive_created_at_id",
+                "CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_users_inactive_created_at_id " +
+                "ON users (created_at, id) WHERE is_active IS NOT TRUE");
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${app.users.search.create-indexes:true}")
+    private boolean enabled;
+
+    public UserSearchIndexes(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void createIndexes() {
+        if (!enabled) {
+            return;
+        }
+        INDEXES.forEach((name, ddl) -> {
+            try {
+                long start = System.currentTimeMillis();
+                jdbcTemplate.execute(ddl);
+                Boolean valid = jdbcTemplate.queryForObject(
+                        "SELECT indisvalid FROM pg_index WHERE indexrelid = to_regclass(?)", Boolean.class, name);
+                if (Boolean.FALSE.equals(valid)) {
+                    logger.warn("⚠️ Index {} is INVALID (an earlier build was interrupted); drop it so it is rebuilt", name);
+                } else {
+                    logger.info("🗂️ Index {} ready in {} ms", name, System.currentTimeMillis() - start);
+                }
+            } catch (RuntimeException e) {
+                logger.warn("⚠️ Could not create index {}: {}", name, e.getMessage());
+            }
+        });
+    }
+}
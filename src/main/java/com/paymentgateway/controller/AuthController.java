@@ -1,13 +1,22 @@
 package com.paymentgateway.controller;
 
-import com.paymentgateway.entity.User;
+import com.paymentgateway.dto.LoginRequest;
+import com.paymentgateway.dto.UserAuthView;
+import com.paymentgateway.exception.PasswordHashingBusyException;
 import com.paymentgateway.service.JwtTokenProvider;
+import com.paymentgateway.service.OtpAttemptLimiter;
 import com.paymentgateway.service.UserService;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.DisabledException;
+import org.springframework.security.authentication.InternalAuthenticationServiceException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
 
@@ -21,44 +30,120 @@ public class AuthController {
     private final AuthenticationManager authenticationManager;
     private final UserService userService;
     private final JwtTokenProvider jwtTokenProvider;
+    private final OtpAttemptLimiter otpAttemptLimiter;
 
     @Autowired
     public AuthController(AuthenticationManager authenticationManager,
                          UserService userService,
-                         JwtTokenProvider jwtTokenProvider) {
+                         JwtTokenProvider jwtTokenProvider,
+                         OtpAttemptLimiter otpAttemptLimiter) {
         this.authenticationManager = authenticationManager;
         this.userService = userService;
         this.jwtTokenProvider = jwtTokenProvider;
+        this.otpAttemptLimiter = otpAttemptLimiter;
     }
 
     // ... your existing methods ...
 
+    // Step one of the login: the password goes through the AuthenticationManager, whose
+    // DaoAuthenticationProvider also re-encodes hashes made with another cost (see
+    // PasswordRehashService). Step two is the emailed OTP, checked by /verify-otp-simple.
+    @PostMapping("/login")
+    public ResponseEntity<?> login(@RequestBody LoginRequest request, HttpServletRequest httpRequest) {
+        if (request.getEmail() == null || request.getPassword() == null) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Email and password are required"));
+        }
+        String email = request.getEmail().trim();
+        
+        // Password guesses count against the same per-email and per-IP limits as OTP guesses
+        OtpAttemptLimiter.Attempt attempt = otpAttemptLimiter.tryAcquire(email, httpRequest.getRemoteAddr());
+        if (!attempt.isAllowed()) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf((attempt.getRetryAfterMs() + 999) / 1000))
+                .body(Map.of("error", "Too many attempts. Try again later."));
+        }
+        
+        try {
+            Authentication authentication = authenticationManager.authenticate(
+                new UsernamePasswordAuthenticationToken(email, request.getPassword()));
+            otpAttemptLimiter.recordSuccess(attempt);
+            
+            userService.generateAndSendOtp(authentication.getName());
+            System.out.println("✅ Password accepted, OTP sent to: " + email);
+            return ResponseEntity.ok(Map.of(
+                "message", "Verification code sent to your email",
+                "email", authentication.getName()
+            ));
+        } catch (PasswordHashingBusyException e) {
+            // The password was never checked, so the guess is handed back; answered with
+            // 503 + Retry-After by GlobalExceptionHandler
+            otpAttemptLimiter.recordSuccess(attempt);
+            throw e;
+        } catch (InternalAuthenticationServiceException e) {
+            // The provider wraps encoder failures raised during its user lookup, such as the
+            // dummy hash it prepares for unknown emails
+            if (e.getCause() instanceof PasswordHashingBusyException busy) {
+                otpAttemptLimiter.recordSuccess(attempt);
+                throw busy;
+            }
+            otpAttemptLimiter.recordFailure(attempt);
+            System.out.println("💥 Login error for " + email + ": " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                .body(Map.of("error", "Invalid email or password"));
+        } catch (DisabledException e) {
+            otpAttemptLimiter.recordFailure(attempt);
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                .body(Map.of("error", "Account is not activated"));
+        } catch (AuthenticationException e) {
+            // Unknown email and wrong password get the same answer
+            otpAttemptLimiter.recordFailure(attempt);
+            System.out.println("❌ Login failed for: " + email);
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                .body(Map.of("error", "Invalid email or password"));
+        }
+    }
+
     @PostMapping("/verify-otp-simple")
-    public ResponseEntity<?> verifyOtpSimple(@RequestBody OtpVerificationRequest request) {
+    public ResponseEntity<?> verifyOtpSimple(@RequestBody OtpVerificationRequest request,
+                                             HttpServletRequest httpRequest) {
         try {
             System.out.println("🔧 Verifying OTP for: " + request.getEmail());
             
+            // Throttled guesses are turned away before any DB lookup or hashing; an allowed
+            // one is counted now and handed back only if the code is right
+            String clientIp = httpRequest.getRemoteAddr();
+            OtpAttemptLimiter.Attempt attempt = otpAttemptLimiter.tryAcquire(request.getEmail(), clientIp);
+            if (!attempt.isAllowed()) {
+                System.out.println("🔒 Too many OTP attempts for: " + request.getEmail());
+                return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf((attempt.getRetryAfterMs() + 999) / 1000))
+                    .body(Map.of("error", "Too many attempts. Try again later."));
+            }
+            
             boolean isValid = userService.verifyOtp(request.getEmail(), request.getOtp());
             
             if (isValid) {
+                otpAttemptLimiter.recordSuccess(attempt);
+                
                 // Generate JWT token - FIXED LINE
-                User user = userService.findByEmail(request.getEmail())
+                UserAuthView user = userService.findAuthViewByEmail(request.getEmail())
                     .orElseThrow(() -> new RuntimeException("User not found"));
                 
-                String token = jwtTokenProvider.generateToken(user.getEmail());
+                String token = jwtTokenProvider.generateToken(user.email());
                 
                 Map<String, Object> response = new HashMap<>();
                 response.put("message", "Login successful");
                 response.put("token", token);
                 response.put("user", Map.of(
-                    "email", user.getEmail(),
-                    "firstName", user.getFirstName(),
-                    "lastName", user.getLastName()
+                    "email", user.email(),
+                    "firstName", user.firstName(),
+                    "lastName", user.lastName()
                 ));
                 
                 System.out.println("✅ OTP verified and login successful for: " + request.getEmail());
                 return ResponseEntity.ok(response);
             } else {
+                otpAttemptLimiter.recordFailure(attempt);
                 System.out.println("❌ Invalid OTP for: " + request.getEmail());
                 return ResponseEntity.badRequest()
                     .body(Map.of("error", "Invalid OTP"));
@@ -71,6 +156,22 @@ public class AuthController {
         }
     }
 
+    // Target of the activation email link. The token must be either a signed activation token
+    // or the one stored for the account at registration; an email alone never activates an account.
+    @GetMapping("/activate")
+    public ResponseEntity<?> activate(@RequestParam String email,
+                                      @RequestParam(required = false) String token) {
+        if (token == null || token.isBlank()) {
+            return ResponseEntity.badRequest()
+                .body(Map.of("error", "Activation link is invalid or has expired"));
+        }
+        if (userService.activateWithToken(email.trim(), token.trim())) {
+            return ResponseEntity.ok(Map.of("message", "Account activated. You can now log in."));
+        }
+        return ResponseEntity.badRequest()
+            .body(Map.of("error", "Activation link is invalid or has expired"));
+    }
+
     // Inner class for request
     public static class OtpVerificationRequest {
         private String email;
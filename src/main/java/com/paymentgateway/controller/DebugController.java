@@ -6,11 +6,8 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
-import com.paymentgateway.entity.User;
 import com.paymentgateway.repository.UserRepository;
 
-import java.util.List;
-
 @RestController
 @RequestMapping("/api/debug")
 public class DebugController {
@@ -18,14 +15,9 @@ public class DebugController {
     @Autowired
     private UserRepository userRepository;
     
-    @GetMapping("/users")
-    public List<User> getAllUsers() {
-        return userRepository.findAll();
-    }
-    
     @GetMapping("/health")
     public String healthCheck() {
         long userCount = userRepository.count();
         return "Database is working! Total users: " + userCount;
     }
-}
\ No newline at end of file
+}
@@ -2,15 +2,24 @@
 package com.paymentgateway.controller;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
-import com.paymentgateway.entity.PasswordResetToken;
+import com.paymentgateway.dto.ResetTokenView;
+import com.paymentgateway.dto.UserAuthView;
 import com.paymentgateway.entity.User;
-import com.paymentgateway.service.EmailService;
+import com.paymentgateway.exception.PasswordHashingBusyException;
+import com.paymentgateway.service.EmailOutboxService;
+import com.paymentgateway.service.OtpAttemptLimiter;
 import com.paymentgateway.service.PasswordResetService;
+import com.paymentgateway.service.SignedTokenService;
+import com.paymentgateway.service.TokenGenerator;
 import com.paymentgateway.service.UserService;
 
+import jakarta.servlet.http.HttpServletRequest;
+
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
@@ -28,7 +37,16 @@ public class PasswordResetController {
     private PasswordResetService passwordResetService;
     
     @Autowired
-    private EmailService emailService;
+    private EmailOutboxService emailOutboxService;
+    
+    @Autowired
+    private OtpAttemptLimiter otpAttemptLimiter;
+    
+    @Autowired
+    private SignedTokenService signedTokenService;
+    
+    @Autowired
+    private TokenGenerator tokenGenerator;
     
     @PostMapping("/request")
     public ResponseEntity<?> requestPasswordReset(@RequestBody PasswordResetRequest request) {
@@ -39,25 +57,14 @@ public class PasswordResetController {
             
             String email = request.getEmail().toLowerCase().trim();
             
-            // Check if user exists using the correct method
-            if (!userService.existsByEmail(email)) {
-                // For security reasons, don't reveal if email exists or not
-                return ResponseEntity.ok(createSuccessResponse(
-                    "If the email exists in our system, a verification code has been sent."
-                ));
-            }
-            
-            Optional<User> userOptional = userService.findByEmail(email);
+            // Slim cached view; unknown emails are answered by the bloom filter without a query
+            Optional<UserAuthView> userOptional = userService.findAuthViewByEmail(email);
             if (userOptional.isPresent()) {
-                User user = userOptional.get();
-                
-                // Create password reset token
-                PasswordResetToken resetToken = passwordResetService.createPasswordResetToken(user);
-                
-                // Send email with OTP
-                emailService.sendPasswordResetEmail(user.getEmail(), resetToken.getToken());
+                // Create password reset token and queue the email with OTP
+                passwordResetService.requestPasswordReset(userOptional.get());
             }
             
+            // For security reasons, don't reveal if email exists or not
             return ResponseEntity.ok(createSuccessResponse(
                 "If the email exists in our system, a verification code has been sent."
             ));
@@ -68,7 +75,7 @@ public class PasswordResetController {
     }
     
     @PostMapping("/verify-otp")
-    public ResponseEntity<?> verifyOtp(@RequestBody VerifyOtpRequest request) {
+    public ResponseEntity<?> verifyOtp(@RequestBody VerifyOtpRequest request, HttpServletRequest httpRequest) {
         try {
             if (request.getEmail() == null || request.getEmail().trim().isEmpty()) {
                 return ResponseEntity.badRequest().body(createErrorResponse("Email is required"));
@@ -79,26 +86,56 @@ public class PasswordResetController {
             }
             
             String email = request.getEmail().toLowerCase().trim();
-            String otp = request.getOtp().toUpperCase().trim();
+            // Signed tokens are case-sensitive base64url; only the short stored codes are normalised
+            String otp = request.getOtp().trim();
+            if (!signedTokenService.isSignedToken(otp)) {
+                otp = tokenGenerator.normalize(otp);
+            }
+            
+            // Throttled guesses are turned away before the token lookup; an allowed one is
+            // counted now and handed back only if the code is right
+            OtpAttemptLimiter.Attempt attempt = otpAttemptLimiter.tryAcquire(email, httpRequest.getRemoteAddr());
+            if (!attempt.isAllowed()) {
+                return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf((attempt.getRetryAfterMs() + 999) / 1000))
+                    .body(createErrorResponse("Too many attempts. Please try again later."));
+            }
+            
+            if (signedTokenService.isSignedToken(otp)) {
+                if (passwordResetService.validateSignedResetToken(otp, email).isEmpty()) {
+                    otpAttemptLimiter.recordFailure(attempt);
+                    return ResponseEntity.badRequest().body(createErrorResponse("Invalid or expired verification code"));
+                }
+                otpAttemptLimiter.recordSuccess(attempt);
+                Map<String, Object> response = new HashMap<>();
+                response.put("message", "Verification code validated successfully");
+                response.put("token", otp);
+                response.put("email", email);
+                return ResponseEntity.ok(response);
+            }
             
             // Validate token
-            Optional<PasswordResetToken> tokenOptional = passwordResetService.validatePasswordResetToken(otp);
+            Optional<ResetTokenView> tokenOptional = passwordResetService.validatePasswordResetToken(otp);
             
             if (tokenOptional.isEmpty()) {
+                otpAttemptLimiter.recordFailure(attempt);
                 return ResponseEntity.badRequest().body(createErrorResponse("Invalid or expired verification code"));
             }
             
-            PasswordResetToken token = tokenOptional.get();
+            ResetTokenView token = tokenOptional.get();
             
             // Verify token belongs to the requested email
-            if (!token.getUser().getEmail().equalsIgnoreCase(email)) {
+            if (!token.email().equalsIgnoreCase(email)) {
+                otpAttemptLimiter.recordFailure(attempt);
                 return ResponseEntity.badRequest().body(createErrorResponse("Invalid verification code for this email"));
             }
             
+            otpAttemptLimiter.recordSuccess(attempt);
+            
             Map<String, Object> response = new HashMap<>();
             response.put("message", "Verification code validated successfully");
-            response.put("token", token.getToken());
-            response.put("email", token.getUser().getEmail());
+            response.put("token", token.token());
+            response.put("email", token.email());
             
             return ResponseEntity.ok(response);
             
@@ -108,7 +145,7 @@ public class PasswordResetController {
     }
     
     @PostMapping("/reset")
-    public ResponseEntity<?> resetPassword(@RequestBody NewPasswordRequest request) {
+    public ResponseEntity<?> resetPassword(@RequestBody NewPasswordRequest request, HttpServletRequest httpRequest) {
         try {
             if (request.getEmail() == null || request.getEmail().trim().isEmpty()) {
                 return ResponseEntity.badRequest().body(createErrorResponse("Email is required"));
@@ -132,43 +169,90 @@ public class PasswordResetController {
             }
             
             String email = request.getEmail().toLowerCase().trim();
-            String tokenValue = request.getToken().toUpperCase().trim();
+            String tokenValue = request.getToken().trim();
+            if (!signedTokenService.isSignedToken(tokenValue)) {
+                tokenValue = tokenGenerator.normalize(tokenValue);
+            }
+            
+            // The reset token is the same code, so guesses here count against the same limits
+            OtpAttemptLimiter.Attempt attempt = otpAttemptLimiter.tryAcquire(email, httpRequest.getRemoteAddr());
+            if (!attempt.isAllowed()) {
+                return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf((attempt.getRetryAfterMs() + 999) / 1000))
+                    .body(createErrorResponse("Too many attempts. Please try again later."));
+            }
+            
+            if (signedTokenService.isSignedToken(tokenValue)) {
+                return resetWithSignedToken(tokenValue, email, attempt, request.getNewPassword());
+            }
             
             // Validate token
-            Optional<PasswordResetToken> tokenOptional = passwordResetService.validatePasswordResetToken(tokenValue);
+            Optional<ResetTokenView> tokenOptional = passwordResetService.validatePasswordResetToken(tokenValue);
             
             if (tokenOptional.isEmpty()) {
+                otpAttemptLimiter.recordFailure(attempt);
                 return ResponseEntity.badRequest().body(createErrorResponse("Invalid or expired verification code"));
             }
             
-            PasswordResetToken token = tokenOptional.get();
+            ResetTokenView token = tokenOptional.get();
             
             // Verify token belongs to the requested email
-            if (!token.getUser().getEmail().equalsIgnoreCase(email)) {
+            if (!token.email().equalsIgnoreCase(email)) {
+                otpAttemptLimiter.recordFailure(attempt);
                 return ResponseEntity.badRequest().body(createErrorResponse("Invalid verification code for this email"));
             }
             
-            User user = token.getUser();
-            
-            // Update password using the correct method
-            userService.updatePassword(user, request.getNewPassword());
-            
-            // Mark token as used
-            passwordResetService.markTokenAsUsed(token);
+            // Hash before the transaction; only then is the token burned and the user loaded
+            String encodedPassword = userService.getPasswordEncoder().encode(request.getNewPassword());
+            Optional<User> updated = passwordResetService.resetPassword(token, encodedPassword);
+            if (updated.isEmpty()) {
+                return ResponseEntity.badRequest().body(createErrorResponse("Invalid or expired verification code"));
+            }
+            User user = updated.get();
+            otpAttemptLimiter.recordSuccess(attempt);
             
             // Send success email
             String userName = user.getFirstName() != null ? user.getFirstName() : user.getEmail();
-            emailService.sendPasswordResetEmail(user.getEmail(), userName);
+            emailOutboxService.enqueuePasswordResetEmail(user.getEmail(), userName);
             
             return ResponseEntity.ok(createSuccessResponse(
                 "Password has been reset successfully. You can now log in with your new password."
             ));
             
+        } catch (PasswordHashingBusyException e) {
+            // Answered with 503 + Retry-After by GlobalExceptionHandler
+            throw e;
         } catch (Exception e) {
             return ResponseEntity.status(500).body(createErrorResponse("An error occurred while resetting password"));
         }
     }
     
+    // Stateless reset: verified in memory, then one conditional UPDATE stores the hash and
+    // bumps the user's token version, so the same token can't be used twice
+    private ResponseEntity<?> resetWithSignedToken(String token, String email, OtpAttemptLimiter.Attempt attempt,
+                                                   String newPassword) {
+        Optional<SignedTokenService.Claims> claims = passwordResetService.validateSignedResetToken(token, email);
+        if (claims.isEmpty()) {
+            otpAttemptLimiter.recordFailure(attempt);
+            return ResponseEntity.badRequest().body(createErrorResponse("Invalid or expired verification code"));
+        }
+        String encodedPassword = userService.getPasswordEncoder().encode(newPassword);
+        if (!passwordResetService.resetPassword(claims.get(), email, encodedPassword)) {
+            return ResponseEntity.badRequest().body(createErrorResponse("Invalid or expired verification code"));
+        }
+        otpAttemptLimiter.recordSuccess(attempt);
+        
+        // Send success email
+        String userName = userService.findAuthViewByEmail(email)
+                .map(UserAuthView::firstName)
+                .orElse(email);
+        emailOutboxService.enqueuePasswordResetEmail(email, userName);
+        
+        return ResponseEntity.ok(createSuccessResponse(
+            "Password has been reset successfully. You can now log in with your new password."
+        ));
+    }
+    
     @PostMapping("/resend-otp")
     public ResponseEntity<?> resendOtp(@RequestBody PasswordResetRequest request) {
         try {
@@ -178,7 +262,7 @@ public class PasswordResetController {
             
             String email = request.getEmail().toLowerCase().trim();
             
-            Optional<User> userOptional = userService.findByEmail(email);
+            Optional<UserAuthView> userOptional = userService.findAuthViewByEmail(email);
             if (userOptional.isEmpty()) {
                 // For security reasons, don't reveal if email exists or not
                 return ResponseEntity.ok(createSuccessResponse(
@@ -186,13 +270,8 @@ public class PasswordResetController {
                 ));
             }
             
-            User user = userOptional.get();
-            
-            // Create new password reset token
-            PasswordResetToken resetToken = passwordResetService.createPasswordResetToken(user);
-            
-            // Send email with new OTP
-            emailService.sendPasswordResetEmail(user.getEmail(), resetToken.getToken());
+            // Create new password reset token and queue the email with new OTP
+            passwordResetService.requestPasswordReset(userOptional.get());
             
             return ResponseEntity.ok(createSuccessResponse(
                 "If the email exists in our system, a verification code has been sent."
@@ -0,0 +1,32 @@
+// UserExportController.java - Streamed user export as NDJSON or CSV, admin only
+package com.paymentgateway.controller;
+
+import com.paymentgateway.service.UserExportService;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+@RestController
+@RequestMapping("/api/admin/users")
+public class UserExportController {
+
+    private final UserExportService userExportService;
+
+    public UserExportController(UserExportService userExportService) {
+        this.userExportService = userExportService;
+    }
+
+    // Streamed page by page as NDJSON (default) or CSV; no password or OTP columns
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportUsers(@RequestParam(defaultValue = "ndjson") String format) {
+        boolean csv = "csv".equalsIgnoreCase(format);
+        UserExportService.Format exportFormat = csv ? UserExportService.Format.CSV : UserExportService.Format.NDJSON;
+        StreamingResponseBody body = output -> userExportService.export(output, exportFormat);
+        return ResponseEntity.ok()
+                .contentType(csv ? new MediaType("text", "csv") : MediaType.parseMediaType("application/x-ndjson"))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=users." + (csv ? "csv" : "ndjson"))
+                .body(body);
+    }
+}
@@ -0,0 +1,59 @@
+// UserImportController.java - Bulk user import from a streamed CSV or NDJSON upload
+package com.paymentgateway.controller;
+
+import com.paymentgateway.dto.ApiResponse;
+import com.paymentgateway.dto.UserImportReport;
+import com.paymentgateway.service.UserImportService;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.util.Locale;
+
+@RestController
+@RequestMapping("/api/admin/users")
+public class UserImportController {
+
+    private final UserImportService userImportService;
+
+    public UserImportController(UserImportService userImportService) {
+        this.userImportService = userImportService;
+    }
+
+    // The body is read straight off the request stream, never buffered whole:
+    //   Content-Type: text/csv              header row: email,password,first_name,last_name[,role][,active]
+    //   Content-Type: application/x-ndjson  one {"email":..,"password":..,"firstName":..,"lastName":..} per line
+    @PostMapping("/import")
+    public ResponseEntity<?> importUsers(HttpServletRequest request,
+                                         @RequestParam(required = false) String format) {
+        UserImportService.Format importFormat = resolveFormat(format, request.getContentType());
+        if (importFormat == null) {
+            return ResponseEntity.status(HttpStatus.UNSUPPORTED_MEDIA_TYPE)
+                    .body(ApiResponse.error("Send text/csv or application/x-ndjson, or pass ?format=csv|ndjson"));
+        }
+        try {
+            UserImportReport report = userImportService.importUsers(request.getInputStream(), importFormat);
+            return ResponseEntity.ok(ApiResponse.success(
+                    "Imported " + report.imported() + " of " + report.totalRows() + " users", report));
+        } catch (IOException e) {
+            return ResponseEntity.badRequest().body(ApiResponse.error("Could not read upload: " + e.getMessage()));
+        }
+    }
+
+    private static UserImportService.Format resolveFormat(String format, String contentType) {
+        String hint = format != null ? format : contentType;
+        if (hint == null) {
+            return null;
+        }
+        hint = hint.toLowerCase(Locale.ROOT);
+        if (hint.contains("csv")) {
+            return UserImportService.Format.CSV;
+        }
+        if (hint.contains("ndjson") || hint.contains("json")) {
+            return UserImportService.Format.NDJSON;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,66 @@
+// UserSearchController.java - Admin user search with keyset pagination
+package com.paymentgateway.controller;
+
+import com.paymentgateway.dto.ApiResponse;
+import com.paymentgateway.dto.UserSearchCriteria;
+import com.paymentgateway.dto.UserSearchCursor;
+import com.paymentgateway.dto.UserSearchPage;
+import com.paymentgateway.dto.UserSummary;
+import com.paymentgateway.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/admin/users")
+public class UserSearchController {
+
+    private final UserRepository userRepository;
+
+    @Value("${app.users.search.max-page-size:200}")
+    private int maxPageSize;
+
+    public UserSearchController(UserRepository userRepository) {
+        this.userRepository = userRepository;
+    }
+
+    // GET /api/admin/users?active=false&role=USER&createdFrom=2025-01-01T00:00:00&emailPrefix=jo&size=50
+    // Follow nextCursor (as ?cursor=) for the next page; it is null on the last one.
+    // There is deliberately no total count: counting millions of rows is the slow part.
+    @GetMapping
+    public ResponseEntity<?> search(@RequestParam(required = false) Boolean active,
+                                    @RequestParam(required = false) String role,
+                                    @RequestParam(required = false)
+                                    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime createdFrom,
+                                    @RequestParam(required = false)
+                                    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime createdTo,
+                                    @RequestParam(required = false) String emailPrefix,
+                                    @RequestParam(required = false) String cursor,
+                                    @RequestParam(defaultValue = "50") int size) {
+        UserSearchCursor after;
+        try {
+            after = cursor == null || cursor.isBlank() ? null : UserSearchCursor.decode(cursor);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
+        }
+        int pageSize = Math.max(1, Math.min(size, maxPageSize));
+        UserSearchCriteria criteria = new UserSearchCriteria(active, blankToNull(role), createdFrom, createdTo,
+                blankToNull(emailPrefix));
+
+        // One extra row tells us whether another page exists, without a count
+        List<UserSummary> rows = userRepository.searchUsers(criteria, after, pageSize + 1);
+        boolean hasMore = rows.size() > pageSize;
+        List<UserSummary> users = hasMore ? rows.subList(0, pageSize) : rows;
+        String nextCursor = hasMore ? UserSearchCursor.after(users.get(users.size() - 1)).encode() : null;
+        return ResponseEntity.ok(ApiResponse.success("Found " + users.size() + " users",
+                new UserSearchPage(users, nextCursor)));
+    }
+
+    private static String blankToNull(String value) {
+        return value == null || value.isBlank() ? null : value;
+    }
+}
@@ -0,0 +1,19 @@
+// ResetTokenView.java - What reset-token validation needs: the token's state and its owner's id and email
+package com.paymentgateway.dto;
+
+import java.time.LocalDateTime;
+
+// Loaded by one JPQL constructor expression over password_reset_tokens joined to users by
+// primary key; no User entity is built.
+public record ResetTokenView(
+        Long id,
+        String token,
+        LocalDateTime expiryDate,
+        boolean used,
+        Long userId,
+        String email) {
+
+    public boolean isValid() {
+        return !used && LocalDateTime.now().isBefore(expiryDate);
+    }
+}
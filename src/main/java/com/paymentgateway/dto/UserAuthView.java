@@ -0,0 +1,38 @@
+// UserAuthView.java - The users columns the login, OTP and reset flows read, as an immutable projection
+package com.paymentgateway.dto;
+
+import com.paymentgateway.entity.User;
+
+// Filled by a JPQL constructor expression, so no entity is created, attached to the
+// persistence context or dirty-checked. Also the value type of UserCache, which is why the
+// OTP columns are left out: they change on every login and are only read from the row.
+public record UserAuthView(
+        Long id,
+        String email,
+        String password,
+        Boolean isActive,
+        Boolean enabled,
+        String role,
+        String firstName,
+        String lastName,
+        int tokenVersion) {
+
+    public boolean active() {
+        return Boolean.TRUE.equals(isActive);
+    }
+
+    // Detached, partially filled User for APIs that want one (e.g. UserDetails); never pass it to save()
+    public User toUser() {
+        User user = new User();
+        user.setId(id);
+        user.setEmail(email);
+        user.setPassword(password);
+        user.setIsActive(active());
+        user.setEnabled(enabled == null || enabled);
+        user.setRole(role);
+        user.setFirstName(firstName);
+        user.setLastName(lastName);
+        user.setTokenVersion(tokenVersion);
+        return user;
+    }
+}
@@ -0,0 +1,19 @@
+// UserImportReport.java - Outcome of a bulk user import, with one entry per rejected row
+package com.paymentgateway.dto;
+
+import java.util.List;
+
+public record UserImportReport(
+        long totalRows,
+        long imported,
+        long duplicates,
+        long failed,
+        long durationMs,
+        double rowsPerSecond,
+        boolean errorsTruncated,
+        List<RowError> errors) {
+
+    // line is 1-based in the uploaded file (the CSV header is line 1)
+    public record RowError(long line, String email, String reason) {
+    }
+}
@@ -0,0 +1,12 @@
+// UserSearchCriteria.java - Filters for the admin user search; null means "any"
+package com.paymentgateway.dto;
+
+import java.time.LocalDateTime;
+
+public record UserSearchCriteria(
+        Boolean active,
+        String role,
+        LocalDateTime createdFrom,   // inclusive
+        LocalDateTime createdTo,     // exclusive
+        String emailPrefix) {
+}
@@ -0,0 +1,36 @@
+// UserSearchCursor.java - Position after the last row of a search page, passed back by the client as an opaque string
+package com.paymentgateway.dto;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+// (createdAt, id) of the last row returned. createdAt is null for legacy rows without one,
+// which sort ahead of every dated row.
+public record UserSearchCursor(LocalDateTime createdAt, long id) {
+
+    public static UserSearchCursor after(UserSummary last) {
+        return new UserSearchCursor(last.createdAt(), last.id());
+    }
+
+    public String encode() {
+        String raw = (createdAt == null ? "" : createdAt.toString()) + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static UserSearchCursor decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = raw.lastIndexOf('|');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            String createdAt = raw.substring(0, separator);
+            return new UserSearchCursor(createdAt.isEmpty() ? null : LocalDateTime.parse(createdAt),
+                    Long.parseLong(raw.substring(separator + 1)));
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+}
@@ -0,0 +1,7 @@
+// UserSearchPage.java - One page of admin search results; nextCursor is null on the last page
+package com.paymentgateway.dto;
+
+import java.util.List;
+
+public record UserSearchPage(List<UserSummary> users, String nextCursor) {
+}
@@ -0,0 +1,15 @@
+// UserSummary.java - Export-safe view of a user: no password, OTP or token columns
+package com.paymentgateway.dto;
+
+import java.time.LocalDateTime;
+
+public record UserSummary(
+        Long id,
+        String email,
+        String firstName,
+        String lastName,
+        String role,
+        Boolean isActive,
+        Boolean enabled,
+        LocalDateTime createdAt) {
+}
@@ -0,0 +1,68 @@
+// BatchJobCheckpoint.java - Progress of a chunked maintenance job, committed with every chunk
+package com.paymentgateway.entity;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "batch_job_checkpoints")
+public class BatchJobCheckpoint {
+
+    public enum Status {
+        IDLE,       // never run, or reset
+        RUNNING,    // owned by a node until updated_at goes stale
+        PAUSED,     // stopped on request; resumes after last_id
+        COMPLETED,
+        FAILED      // stopped on an error; resumes after last_id
+    }
+
+    @Id
+    @Column(name = "job_name", length = 64)
+    private String jobName;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private Status status = Status.IDLE;
+
+    // Highest key fully processed; the next chunk starts after it
+    @Column(name = "last_id", nullable = false)
+    private long lastId;
+
+    @Column(nullable = false)
+    private long processed;
+
+    @Column(nullable = false)
+    private long affected;
+
+    // Node running the job; chunk commits from any other node are refused
+    @Column(length = 128)
+    private String owner;
+
+    @Column(name = "last_error", length = 1000)
+    private String lastError;
+
+    @Column(name = "started_at")
+    private LocalDateTime startedAt;
+
+    // Heartbeat: bumped by every chunk commit
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    @Column(name = "finished_at")
+    private LocalDateTime finishedAt;
+
+    // Rows are created by BatchJobCheckpointRepository.createIfAbsent
+    public BatchJobCheckpoint() {
+    }
+
+    public String getJobName() { return jobName; }
+    public Status getStatus() { return status; }
+    public long getLastId() { return lastId; }
+    public long getProcessed() { return processed; }
+    public long getAffected() { return affected; }
+    public String getOwner() { return owner; }
+    public String getLastError() { return lastError; }
+    public LocalDateTime getStartedAt() { return startedAt; }
+    public LocalDateTime getUpdatedAt() { return updatedAt; }
+    public LocalDateTime getFinishedAt() { return finishedAt; }
+}
@@ -5,13 +5,17 @@ import jakarta.persistence.*;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "otp_tokens")
+@Table(name = "otp_tokens", indexes = {
+    @Index(name = "idx_otp_tokens_user_email", columnList = "user_email"),
+    @Index(name = "idx_otp_tokens_expires_at", columnList = "expires_at")
+})
 public class OtpToken {
     
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
     
+    // OtpHasher HMAC of the code, never the code itself
     @Column(nullable = false)
     private String otp;
     
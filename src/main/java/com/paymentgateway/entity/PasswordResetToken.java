@@ -7,7 +7,9 @@ import org.hibernate.annotations.CreationTimestamp;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "password_reset_tokens")
+@Table(name = "password_reset_tokens", indexes = {
+    @Index(name = "idx_password_reset_tokens_expiry_date", columnList = "expiry_date")
+})
 public class PasswordResetToken {
     private static final int EXPIRY_MINUTES = 10;
     
@@ -18,7 +20,9 @@ public class PasswordResetToken {
     @Column(nullable = false, unique = true)
     private String token;
     
-    @OneToOne(targetEntity = User.class, fetch = FetchType.EAGER)
+    // Lazy: validation reads the owner's email through ResetTokenView, and the user row is
+    // only loaded when a password is actually reset
+    @OneToOne(targetEntity = User.class, fetch = FetchType.LAZY)
     @JoinColumn(nullable = false, name = "user_id")
     private User user;
     
@@ -6,12 +6,19 @@ import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 
+import com.paymentgateway.util.EmailNormalizer;
+
 import java.time.LocalDateTime;
 import java.util.Collection;
 import java.util.Collections;
 
 @Entity
-@Table(name = "users")
+@Table(name = "users", indexes = {
+    // Seek keys for the admin search: newest first, optionally narrowed by activation state or role
+    @Index(name = "idx_users_created_at_id", columnList = "created_at, id"),
+    @Index(name = "idx_users_active_created_at_id", columnList = "is_active, created_at, id"),
+    @Index(name = "idx_users_role_created_at_id", columnList = "role, created_at, id")
+})
 public class User implements UserDetails {
     
     @Id
@@ -27,6 +34,10 @@ public class User implements UserDetails {
     @Column(unique = true, nullable = false)
     private String email;
     
+    // Canonical form used by every lookup; nullable only until the backfill has reached old rows
+    @Column(name = "email_normalized", unique = true)
+    private String emailNormalized;
+    
     @Column(nullable = false)
     private String password;
     
@@ -48,6 +59,11 @@ public class User implements UserDetails {
     @Column(name = "activation_token_expiry")
     private LocalDateTime activationTokenExpiry;
     
+    // Bumped whenever a signed activation or reset token is consumed, which kills every
+    // other token issued against the old value (see SignedTokenService)
+    @Column(name = "token_version", nullable = false, columnDefinition = "integer default 0")
+    private int tokenVersion = 0;
+    
     @Column(name = "otp")
     private String otp;
     
@@ -144,6 +160,14 @@ public class User implements UserDetails {
         this.email = email;
     }
     
+    public String getEmailNormalized() {
+        return emailNormalized;
+    }
+    
+    public void setEmailNormalized(String emailNormalized) {
+        this.emailNormalized = emailNormalized;
+    }
+    
     @Override
     public String getPassword() {
         return password;
@@ -202,6 +226,14 @@ public class User implements UserDetails {
         this.activationTokenExpiry = activationTokenExpiry;
     }
     
+    public int getTokenVersion() {
+        return tokenVersion;
+    }
+    
+    public void setTokenVersion(int tokenVersion) {
+        this.tokenVersion = tokenVersion;
+    }
+    
     public String getOtp() {
         return otp;
     }
@@ -267,11 +299,17 @@ public class User implements UserDetails {
         if (isActive == null) {
             isActive = false;
         }
+        emailNormalized = EmailNormalizer.normalize(email);
     }
     
     @PreUpdate
     protected void onUpdate() {
         updatedAt = LocalDateTime.now();
+        // Rows the backfill hasn't reached stay NULL: one may be a mixed-case duplicate of a row
+        // that already owns the normalised email, and an unrelated save must not fail on that
+        if (emailNormalized != null) {
+            emailNormalized = EmailNormalizer.normalize(email);
+        }
     }
     
     @Override
@@ -0,0 +1,18 @@
+// EmailCircuitOpenException.java - Thrown instead of calling SMTP while the email circuit is open
+package com.paymentgateway.exception;
+
+import jakarta.mail.MessagingException;
+
+public class EmailCircuitOpenException extends MessagingException {
+
+    private final long retryAfterMs;
+
+    public EmailCircuitOpenException(long retryAfterMs) {
+        super("Email circuit is open, retry in " + retryAfterMs + " ms");
+        this.retryAfterMs = retryAfterMs;
+    }
+
+    public long getRetryAfterMs() {
+        return retryAfterMs;
+    }
+}
@@ -1,6 +1,7 @@
 // src/main/java/com/paymentgateway/exception/GlobalExceptionHandler.java
 package com.paymentgateway.exception;
 
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
@@ -12,6 +13,19 @@ import java.util.Map;
 @RestControllerAdvice
 public class GlobalExceptionHandler {
 
+    @ExceptionHandler(PasswordHashingBusyException.class)
+    public ResponseEntity<Map<String, String>> handlePasswordHashingBusy(PasswordHashingBusyException e) {
+        System.out.println("⏳ Password hashing saturated: " + e.getMessage());
+        
+        Map<String, String> response = new HashMap<>();
+        response.put("error", "Service busy");
+        response.put("message", "Too many requests are being processed, please retry shortly");
+        
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf((e.getRetryAfterMs() + 999) / 1000))
+                .body(response);
+    }
+
     @ExceptionHandler(Exception.class)
     public ResponseEntity<Map<String, String>> handleException(Exception e) {
         System.out.println("💥 Global exception handler: " + e.getMessage());
@@ -0,0 +1,16 @@
+// PasswordHashingBusyException.java - Thrown when the password-hashing queue is full
+package com.paymentgateway.exception;
+
+public class PasswordHashingBusyException extends RuntimeException {
+
+    private final long retryAfterMs;
+
+    public PasswordHashingBusyException(String message, long retryAfterMs) {
+        super(message);
+        this.retryAfterMs = retryAfterMs;
+    }
+
+    public long getRetryAfterMs() {
+        return retryAfterMs;
+    }
+}
@@ -0,0 +1,69 @@
+// BatchJobCheckpointRepository.java
+package com.paymentgateway.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.paymentgateway.entity.BatchJobCheckpoint;
+
+import java.time.LocalDateTime;
+
+@Repository
+public interface BatchJobCheckpointRepository extends JpaRepository<BatchJobCheckpoint, String> {
+
+    @Transactional
+    @Modifying
+    @Query(value = "INSERT INTO batch_job_checkpoints (job_name, status, last_id, processed, affected, updated_at) " +
+                   "VALUES (:jobName, 'IDLE', 0, 0, 0, :now) ON CONFLICT (job_name) DO NOTHING",
+           nativeQuery = true)
+    int createIfAbsent(@Param("jobName") String jobName, @Param("now") LocalDateTime now);
+
+    // Takes the job unless another node is running it with a fresh heartbeat.
+    // The conditional UPDATE is the lock: only one node gets a count of 1.
+    @Transactional
+    @Modifying
+    @Query("UPDATE BatchJobCheckpoint c SET c.status = :running, c.owner = :owner, c.lastError = null, " +
+           "c.startedAt = :now, c.updatedAt = :now, c.finishedAt = null " +
+           "WHERE c.jobName = :jobName AND (c.status <> :running OR c.updatedAt < :staleBefore)")
+    int claim(@Param("jobName") String jobName,
+              @Param("owner") String owner,
+              @Param("running") BatchJobCheckpoint.Status running,
+              @Param("now") LocalDateTime now,
+              @Param("staleBefore") LocalDateTime staleBefore);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE BatchJobCheckpoint c SET c.lastId = 0, c.processed = 0, c.affected = 0 " +
+           "WHERE c.jobName = :jobName AND c.owner = :owner AND c.status = :running")
+    int reset(@Param("jobName") String jobName,
+              @Param("owner") String owner,
+              @Param("running") BatchJobCheckpoint.Status running);
+
+    // Runs in the chunk's own transaction, so progress commits or rolls back with the data
+    @Modifying
+    @Query("UPDATE BatchJobCheckpoint c SET c.lastId = :lastId, c.processed = c.processed + :processed, " +
+           "c.affected = c.affected + :affected, c.updatedAt = :now " +
+           "WHERE c.jobName = :jobName AND c.owner = :owner AND c.status = :running")
+    int recordChunk(@Param("jobName") String jobName,
+                    @Param("owner") String owner,
+                    @Param("running") BatchJobCheckpoint.Status running,
+                    @Param("lastId") long lastId,
+                    @Param("processed") long processed,
+                    @Param("affected") long affected,
+                    @Param("now") LocalDateTime now);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE BatchJobCheckpoint c SET c.status = :status, c.lastError = :lastError, c.updatedAt = :now, " +
+           "c.finishedAt = :now WHERE c.jobName = :jobName AND c.owner = :owner AND c.status = :running")
+    int finish(@Param("jobName") String jobName,
+               @Param("owner") String owner,
+               @Param("running") BatchJobCheckpoint.Status running,
+               @Param("status") BatchJobCheckpoint.Status status,
+               @Param("lastError") String lastError,
+               @Param("now") LocalDateTime now);
+}
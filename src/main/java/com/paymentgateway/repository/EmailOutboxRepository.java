@@ -0,0 +1,103 @@
+// EmailOutboxRepository.java
+package com.paymentgateway.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.paymentgateway.entity.EmailOutbox;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface EmailOutboxRepository extends JpaRepository<EmailOutbox, Long> {
+
+    // Rows due now, plus claims whose lease ran out (node died mid-send).
+    // SKIP LOCKED lets several nodes claim disjoint batches concurrently.
+    @Query(value = "SELECT * FROM email_outbox " +
+                   "WHERE (status = 'PENDING' AND next_attempt_at <= :now) " +
+                   "   OR (status = 'SENDING' AND locked_until < :now) " +
+                   "ORDER BY next_attempt_at " +
+                   "LIMIT :limit " +
+                   "FOR UPDATE SKIP LOCKED",
+           nativeQuery = true)
+    List<EmailOutbox> lockDueBatch(@Param("now") LocalDateTime now, @Param("limit") int limit);
+
+    @Modifying
+    @Query("UPDATE EmailOutbox e SET e.status = :status, e.lockedUntil = :lockedUntil, e.lockedBy = :owner, " +
+           "e.attempts = e.attempts + 1 WHERE e.id IN :ids")
+    int markClaimed(@Param("ids") Collection<Long> ids,
+                    @Param("status") EmailOutbox.Status status,
+                    @Param("lockedUntil") LocalDateTime lockedUntil,
+                    @Param("owner") String owner);
+
+    // The outcome updates below only apply while the caller still holds an unexpired lease.
+    // Once it has run out the row may be claimed again, here or on another node, so a late
+    // result matches nothing and the row is simply retried.
+
+    // The payload (code or token) is not needed once delivered
+    @Transactional
+    @Modifying
+    @Query("UPDATE EmailOutbox e SET e.status = :status, e.sentAt = :now, e.lockedUntil = null, " +
+           "e.lockedBy = null, e.lastError = null, e.payload = null " +
+           "WHERE e.id = :id AND e.lockedBy = :owner AND e.lockedUntil > :now")
+    int markSent(@Param("id") Long id,
+                 @Param("owner") String owner,
+                 @Param("status") EmailOutbox.Status status,
+                 @Param("now") LocalDateTime now);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE EmailOutbox e SET e.status = :status, e.nextAttemptAt = :nextAttemptAt, " +
+           "e.lockedUntil = null, e.lockedBy = null, e.lastError = :lastError " +
+           "WHERE e.id = :id AND e.lockedBy = :owner AND e.lockedUntil > :now")
+    int markFailed(@Param("id") Long id,
+                   @Param("owner") String owner,
+                   @Param("now") LocalDateTime now,
+                   @Param("status") EmailOutbox.Status status,
+                   @Param("nextAttemptAt") LocalDateTime nextAttemptAt,
+                   @Param("lastError") String lastError);
+
+    // Dead letters keep recipient and error for inspection, but not the code or token
+    @Transactional
+    @Modifying
+    @Query("UPDATE EmailOutbox e SET e.status = :status, e.nextAttemptAt = :now, " +
+           "e.lockedUntil = null, e.lockedBy = null, e.lastError = :lastError, e.payload = null " +
+           "WHERE e.id = :id AND e.lockedBy = :owner AND e.lockedUntil > :now")
+    int markDead(@Param("id") Long id,
+                 @Param("owner") String owner,
+                 @Param("now") LocalDateTime now,
+                 @Param("status") EmailOutbox.Status status,
+                 @Param("lastError") String lastError);
+
+    // Hand a claimed row back without charging it an attempt (circuit was open)
+    @Transactional
+    @Modifying
+    @Query("UPDATE EmailOutbox e SET e.status = :status, e.nextAttemptAt = :nextAttemptAt, " +
+           "e.lockedUntil = null, e.lockedBy = null, e.attempts = e.attempts - 1 " +
+           "WHERE e.id = :id AND e.lockedBy = :owner AND e.lockedUntil > :now")
+    int markDeferred(@Param("id") Long id,
+                     @Param("owner") String owner,
+                     @Param("now") LocalDateTime now,
+                     @Param("status") EmailOutbox.Status status,
+                     @Param("nextAttemptAt") LocalDateTime nextAttemptAt);
+
+    // Retention: SENT and DEAD rows whose last attempt is older than the cutoff, a chunk at a
+    // time. next_attempt_at is the last attempt for finished rows and is covered by the
+    // (status, next_attempt_at) index.
+    @Transactional
+    @Modifying
+    @Query(value = "DELETE FROM email_outbox WHERE id IN (" +
+                   "SELECT id FROM email_outbox " +
+                   "WHERE status IN ('SENT', 'DEAD') AND next_attempt_at < :before " +
+                   "LIMIT :limit FOR UPDATE SKIP LOCKED)",
+           nativeQuery = true)
+    int deleteFinishedChunk(@Param("before") LocalDateTime before, @Param("limit") int limit);
+
+    long countByStatus(EmailOutbox.Status status);
+}
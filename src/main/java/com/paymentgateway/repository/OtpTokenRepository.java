@@ -4,7 +4,9 @@ package com.paymentgateway.repository;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import com.paymentgateway.entity.OtpToken;
 
@@ -18,7 +20,25 @@ public interface OtpTokenRepository extends JpaRepository<OtpToken, Long> {
     
     Optional<OtpToken> findByUserEmailAndOtpAndUsedFalse(String userEmail, String otp);
     
+    // Single use across nodes: only one caller can flip used from false to true. otp is the OtpHasher HMAC.
+    @Transactional
     @Modifying
-    @Query("DELETE FROM OtpToken o WHERE o.expiresAt < :now")
-    void deleteByExpiresAtBefore(LocalDateTime now);
+    @Query("UPDATE OtpToken o SET o.used = true WHERE o.userEmail = :email AND o.otp = :otp " +
+           "AND o.used = false AND o.expiresAt > :now")
+    int markUsedByEmailAndOtp(@Param("email") String email,
+                              @Param("otp") String otp,
+                              @Param("now") LocalDateTime now);
+    
+    // One bounded chunk for ExpiredTokenReaper, walking idx_otp_tokens_expires_at.
+    // SKIP LOCKED passes over rows a verification is touching right now.
+    @Transactional
+    @Modifying
+    @Query(value = "DELETE FROM otp_tokens WHERE id IN (SELECT id FROM otp_tokens WHERE expires_at < :cutoff " +
+                   "ORDER BY expires_at LIMIT :limit FOR UPDATE SKIP LOCKED)", nativeQuery = true)
+    int deleteExpiredChunk(@Param("cutoff") LocalDateTime cutoff, @Param("limit") int limit);
+    
+    // Expired rows left, counted up to cap so a huge backlog doesn't turn into a long scan
+    @Query(value = "SELECT COUNT(*) FROM (SELECT 1 FROM otp_tokens WHERE expires_at < :cutoff LIMIT :cap) t",
+           nativeQuery = true)
+    long countExpired(@Param("cutoff") LocalDateTime cutoff, @Param("cap") int cap);
 }
\ No newline at end of file
@@ -6,7 +6,9 @@ import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import com.paymentgateway.dto.ResetTokenView;
 import com.paymentgateway.entity.PasswordResetToken;
 import com.paymentgateway.entity.User;
 
@@ -18,9 +20,27 @@ public interface PasswordResetTokenRepository extends JpaRepository<PasswordRese
     Optional<PasswordResetToken> findByToken(String token);
     Optional<PasswordResetToken> findByUserEmail(String email);
     
+    // Token lookup via its unique index plus the owner's primary key; no entity hydration
+    @Query("SELECT new com.paymentgateway.dto.ResetTokenView(t.id, t.token, t.expiryDate, t.used, u.id, u.email) " +
+           "FROM PasswordResetToken t JOIN t.user u WHERE t.token = :token")
+    Optional<ResetTokenView> findViewByToken(@Param("token") String token);
+    
+    // Single use: of two concurrent resets with the same token only one gets a count of 1
+    @Modifying
+    @Query("UPDATE PasswordResetToken t SET t.used = true WHERE t.id = :id AND t.used = false")
+    int markUsed(@Param("id") Long id);
+    
+    // One bounded chunk for ExpiredTokenReaper, walking idx_password_reset_tokens_expiry_date
+    @Transactional
     @Modifying
-    @Query("DELETE FROM PasswordResetToken t WHERE t.expiryDate < :now")
-    void deleteAllExpiredSince(@Param("now") LocalDateTime now);
+    @Query(value = "DELETE FROM password_reset_tokens WHERE id IN (SELECT id FROM password_reset_tokens " +
+                   "WHERE expiry_date < :cutoff ORDER BY expiry_date LIMIT :limit FOR UPDATE SKIP LOCKED)",
+           nativeQuery = true)
+    int deleteExpiredChunk(@Param("cutoff") LocalDateTime cutoff, @Param("limit") int limit);
+    
+    @Query(value = "SELECT COUNT(*) FROM (SELECT 1 FROM password_reset_tokens WHERE expiry_date < :cutoff " +
+                   "LIMIT :cap) t", nativeQuery = true)
+    long countExpired(@Param("cutoff") LocalDateTime cutoff, @Param("cap") int cap);
     
     @Modifying
     @Query("DELETE FROM PasswordResetToken t WHERE t.user = :user")
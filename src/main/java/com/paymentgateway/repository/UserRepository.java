@@ -1,15 +1,118 @@
 
 package com.paymentgateway.repository;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import com.paymentgateway.dto.UserAuthView;
+import com.paymentgateway.dto.UserSummary;
 import com.paymentgateway.entity.User;
+import com.paymentgateway.util.EmailNormalizer;
 
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface UserRepository extends JpaRepository<User, Long> {
-    Optional<User> findByEmail(String email);
-    boolean existsByEmail(String email);
-}
\ No newline at end of file
+public interface UserRepository extends JpaRepository<User, Long>, UserSearchRepository {
+    
+    // Every email lookup probes the unique email_normalized index. Rows the backfill hasn't
+    // reached yet (email_normalized IS NULL) are still found by their exact stored spelling.
+    String MATCH_EMAIL = "(u.emailNormalized = :normalized OR (u.emailNormalized IS NULL AND u.email = :email))";
+    
+    default Optional<User> findByEmail(String email) {
+        return findByNormalizedEmail(EmailNormalizer.normalize(email), email);
+    }
+    
+    default Optional<UserAuthView> findAuthViewByEmail(String email) {
+        return findAuthViewByNormalizedEmail(EmailNormalizer.normalize(email), email);
+    }
+    
+    default boolean existsByEmail(String email) {
+        return existsByNormalizedEmail(EmailNormalizer.normalize(email), email);
+    }
+    
+    default int activateByEmail(String email, LocalDateTime now) {
+        return activateByNormalizedEmail(EmailNormalizer.normalize(email), email, now);
+    }
+    
+    default int activateByEmailAndToken(String email, String token, LocalDateTime now) {
+        return activateByNormalizedEmailAndToken(EmailNormalizer.normalize(email), email, token, now);
+    }
+    
+    @Query("SELECT u FROM User u WHERE " + MATCH_EMAIL)
+    Optional<User> findByNormalizedEmail(@Param("normalized") String normalized, @Param("email") String email);
+    
+    // Hot-path reads: only the columns the auth flows need, no managed entity
+    @Query("SELECT new com.paymentgateway.dto.UserAuthView(u.id, u.email, u.password, u.isActive, u.enabled, " +
+           "u.role, u.firstName, u.lastName, u.tokenVersion) FROM User u WHERE " + MATCH_EMAIL)
+    Optional<UserAuthView> findAuthViewByNormalizedEmail(@Param("normalized") String normalized,
+                                                         @Param("email") String email);
+    
+    // Answered from the email indexes without touching the row
+    @Query(value = "SELECT EXISTS (SELECT 1 FROM users WHERE email_normalized = :normalized " +
+                   "OR (email_normalized IS NULL AND email = :email))", nativeQuery = true)
+    boolean existsByNormalizedEmail(@Param("normalized") String normalized, @Param("email") String email);
+    
+    // Single-column writes: no entity load, no dirty checking of the whole row
+    @Modifying
+    @Query("UPDATE User u SET u.otp = :otp, u.otpExpiry = :otpExpiry, u.updatedAt = :now WHERE u.id = :id")
+    int updateOtp(@Param("id") Long id,
+                  @Param("otp") String otp,
+                  @Param("otpExpiry") LocalDateTime otpExpiry,
+                  @Param("now") LocalDateTime now);
+    
+    // Checks and consumes in one statement, so a code verifies at most once across nodes
+    @Modifying
+    @Query("UPDATE User u SET u.otp = null, u.otpExpiry = null, u.updatedAt = :now " +
+           "WHERE u.id = :id AND u.otp = :otp AND u.otpExpiry > :now")
+    int consumeOtp(@Param("id") Long id, @Param("otp") String otp, @Param("now") LocalDateTime now);
+    
+    @Query("SELECT u.otp FROM User u WHERE u.id = :id AND u.otpExpiry > :now")
+    Optional<String> findUnexpiredOtp(@Param("id") Long id, @Param("now") LocalDateTime now);
+    
+    @Modifying
+    @Query("UPDATE User u SET u.isActive = true, u.activationToken = null, u.activationTokenExpiry = null, " +
+           "u.updatedAt = :now WHERE " + MATCH_EMAIL)
+    int activateByNormalizedEmail(@Param("normalized") String normalized,
+                                  @Param("email") String email,
+                                  @Param("now") LocalDateTime now);
+    
+    // Consuming a stored activation token: clearing it in the same statement makes it single use
+    @Modifying
+    @Query("UPDATE User u SET u.isActive = true, u.activationToken = null, u.activationTokenExpiry = null, " +
+           "u.updatedAt = :now WHERE " + MATCH_EMAIL + " AND u.activationToken = :token " +
+           "AND u.activationTokenExpiry > :now")
+    int activateByNormalizedEmailAndToken(@Param("normalized") String normalized,
+                                          @Param("email") String email,
+                                          @Param("token") String token,
+                                          @Param("now") LocalDateTime now);
+    
+    // Consuming a signed token: the version check makes it single use, and bumping the
+    // version revokes every other token issued for the same user
+    @Modifying
+    @Query("UPDATE User u SET u.isActive = true, u.activationToken = null, u.activationTokenExpiry = null, " +
+           "u.tokenVersion = u.tokenVersion + 1, u.updatedAt = :now " +
+           "WHERE u.id = :id AND u.tokenVersion = :tokenVersion")
+    int activateIfTokenVersion(@Param("id") Long id,
+                               @Param("tokenVersion") int tokenVersion,
+                               @Param("now") LocalDateTime now);
+    
+    @Modifying
+    @Query("UPDATE User u SET u.password = :password, u.tokenVersion = u.tokenVersion + 1, u.updatedAt = :now " +
+           "WHERE u.id = :id AND u.tokenVersion = :tokenVersion")
+    int updatePasswordIfTokenVersion(@Param("id") Long id,
+                                     @Param("tokenVersion") int tokenVersion,
+                                     @Param("password") String password,
+                                     @Param("now") LocalDateTime now);
+    
+    // Keyset page over the primary key: each page is an index range scan from afterId,
+    // however deep into the table, unlike OFFSET. Pass Pageable.ofSize(n) for the page size.
+    @Query("SELECT new com.paymentgateway.dto.UserSummary(u.id, u.email, u.firstName, u.lastName, u.role, " +
+           "u.isActive, u.enabled, u.createdAt) FROM User u WHERE u.id > :afterId ORDER BY u.id")
+    List<UserSummary> findSummariesAfter(@Param("afterId") long afterId, Pageable page);
+}
@@ -0,0 +1,14 @@
+// UserSearchRepository.java - Filtered keyset search over users, mixed into UserRepository
+package com.paymentgateway.repository;
+
+import com.paymentgateway.dto.UserSearchCriteria;
+import com.paymentgateway.dto.UserSearchCursor;
+import com.paymentgateway.dto.UserSummary;
+
+import java.util.List;
+
+public interface UserSearchRepository {
+
+    // Up to limit rows after the cursor (null = first page), newest first
+    List<UserSummary> searchUsers(UserSearchCriteria criteria, UserSearchCursor after, int limit);
+}
@@ -0,0 +1,95 @@
+// UserSearchRepositoryImpl.java - SQL behind UserSearchRepository
+package com.paymentgateway.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import com.paymentgateway.dto.UserSearchCriteria;
+import com.paymentgateway.dto.UserSearchCursor;
+import com.paymentgateway.dto.UserSummary;
+import com.paymentgateway.util.EmailNormalizer;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+// Seek pagination on (created_at, id) DESC: every page is a backward range scan of one of
+// the (..., created_at, id) indexes starting at the cursor, so page 10,000 costs the same as
+// page 1. No OFFSET and no COUNT(*). Postgres sorts NULL created_at first in DESC order,
+// so legacy rows come before the dated ones and the cursor predicate follows that order.
+//
+// The email prefix filter matches email_normalized with LIKE through a text_pattern_ops index,
+// and active=false reads a partial index of the not-activated rows; both are created by
+// UserSearchIndexes. Rows the email backfill hasn't reached yet aren't matched by the prefix filter.
+public class UserSearchRepositoryImpl implements UserSearchRepository {
+
+    private static final RowMapper<UserSummary> SUMMARY = (rs, rowNum) -> {
+        Timestamp createdAt = rs.getTimestamp("created_at");
+        return new UserSummary(
+                rs.getLong("id"),
+                rs.getString("email"),
+                rs.getString("first_name"),
+                rs.getString("last_name"),
+                rs.getString("role"),
+                (Boolean) rs.getObject("is_active"),
+                (Boolean) rs.getObject("enabled"),
+                createdAt == null ? null : createdAt.toLocalDateTime());
+    };
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public UserSearchRepositoryImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public List<UserSummary> searchUsers(UserSearchCriteria criteria, UserSearchCursor after, int limit) {
+        StringBuilder sql = new StringBuilder(
+                "SELECT id, email, first_name, last_name, role, is_active, enabled, created_at FROM users WHERE TRUE");
+        List<Object> args = new ArrayList<>();
+
+        if (criteria.active() != null) {
+            // NULL is_active counts as not activated, as at login. The predicate must stay exactly
+            // this for idx_users_inactive_created_at_id to apply.
+            sql.append(criteria.active() ? " AND is_active = TRUE" : " AND is_active IS NOT TRUE");
+        }
+        if (criteria.role() != null) {
+            sql.append(" AND role = ?");
+            args.add(criteria.role().trim().toUpperCase(Locale.ROOT));
+        }
+        if (criteria.createdFrom() != null) {
+            sql.append(" AND created_at >= ?");
+            args.add(Timestamp.valueOf(criteria.createdFrom()));
+        }
+        if (criteria.createdTo() != null) {
+            sql.append(" AND created_at < ?");
+            args.add(Timestamp.valueOf(criteria.createdTo()));
+        }
+        if (criteria.emailPrefix() != null) {
+            sql.append(" AND email_normalized LIKE ? ESCAPE '\\'");
+            args.add(escapeLike(EmailNormalizer.normalize(criteria.emailPrefix())) + "%");
+        }
+
+        if (after != null) {
+            if (after.createdAt() == null) {
+                // Still inside the undated rows: the rest of them, then every dated row
+                sql.append(" AND ((created_at IS NULL AND id < ?) OR created_at IS NOT NULL)");
+                args.add(after.id());
+            } else {
+                // Row comparison excludes NULL created_at, which sorted ahead of the cursor
+                sql.append(" AND (created_at, id) < (?, ?)");
+                args.add(Timestamp.valueOf(after.createdAt()));
+                args.add(after.id());
+            }
+        }
+
+        sql.append(" ORDER BY created_at DESC, id DESC LIMIT ?");
+        args.add(limit);
+        return jdbcTemplate.query(sql.toString(), SUMMARY, args.toArray());
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
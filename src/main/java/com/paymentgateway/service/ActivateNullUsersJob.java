@@ -0,0 +1,57 @@
+// ActivateNullUsersJob.java - Sets is_active = true on legacy rows where it is NULL
+package com.paymentgateway.service;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+
+// Replaces the old findAll() + save() loop in UserService.fixExistingUsers. Each chunk is
+// a single statement: pick the next id range, update the NULL rows inside it, and report
+// how many ids were scanned, the last one and how many rows changed.
+@Component
+public class ActivateNullUsersJob implements BatchJob {
+
+    public static final String NAME = "activate-null-users";
+
+    private static final String CHUNK_SQL =
+            "WITH chunk AS (SELECT id FROM users WHERE id > ? ORDER BY id LIMIT ?), " +
+            "updated AS (UPDATE users u SET is_active = true, updated_at = ? FROM chunk " +
+            "            WHERE u.id = chunk.id AND u.is_active IS NULL RETURNING u.id) " +
+            "SELECT (SELECT COUNT(*) FROM chunk), (SELECT MAX(id) FROM chunk), (SELECT COUNT(*) FROM updated)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final UserCache userCache;
+
+    public ActivateNullUsersJob(JdbcTemplate jdbcTemplate, UserCache userCache) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.userCache = userCache;
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public String description() {
+        return "Set is_active = true on users where it is NULL";
+    }
+
+    @Override
+    public ChunkResult processChunk(long afterId, int chunkSize) {
+        return jdbcTemplate.queryForObject(CHUNK_SQL, (rs, rowNum) -> {
+            int scanned = rs.getInt(1);
+            return scanned == 0 ? ChunkResult.done(afterId) : new ChunkResult(scanned, rs.getLong(2), rs.getLong(3));
+        }, afterId, chunkSize, Timestamp.valueOf(LocalDateTime.now()));
+    }
+
+    // Cached views of the fixed rows still say inactive
+    @Override
+    public void afterChunkCommitted(ChunkResult result) {
+        if (result.affected() > 0) {
+            userCache.invalidateAll();
+        }
+    }
+}
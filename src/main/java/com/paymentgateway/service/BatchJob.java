@@ -0,0 +1,37 @@
+// BatchJob.java - A data fix that walks a table in key order, one chunk per transaction
+package com.paymentgateway.service;
+
+// Implementations are Spring beans picked up by BatchJobRunner. processChunk runs inside
+// the runner's transaction together with the checkpoint update, so a chunk and its
+// progress commit or roll back as one and a stopped job resumes exactly after lastId.
+public interface BatchJob {
+
+    // Stable id used in the checkpoint table and the actuator endpoint
+    String name();
+
+    String description();
+
+    // Handle up to chunkSize keys greater than afterId. scanned == 0 means the job is done.
+    ChunkResult processChunk(long afterId, int chunkSize);
+
+    // Chunk size for this job; 0 uses app.batch-jobs.chunk-size
+    default int chunkSize() {
+        return 0;
+    }
+
+    // Started (or resumed) once the application is ready
+    default boolean autoStart() {
+        return false;
+    }
+
+    // Called after the chunk has committed, e.g. to drop cached rows it changed
+    default void afterChunkCommitted(ChunkResult result) {
+    }
+
+    record ChunkResult(int scanned, long lastId, long affected) {
+
+        public static ChunkResult done(long lastId) {
+            return new ChunkResult(0, lastId, 0);
+        }
+    }
+}
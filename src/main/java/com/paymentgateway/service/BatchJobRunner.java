@@ -0,0 +1,236 @@
+// BatchJobRunner.java - Runs BatchJobs chunk by chunk with checkpoints, throttling and pause/resume
+package com.paymentgateway.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.paymentgateway.entity.BatchJobCheckpoint;
+import com.paymentgateway.repository.BatchJobCheckpointRepository;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Each job runs on its own thread. Every chunk is one short transaction holding the job's
+// work and its checkpoint update, followed by a pause of throttle-ms so the job never
+// monopolises the database. The checkpoint row doubles as a cross-node lock: a node only
+// runs a job after claiming the row, and a claim expires when its heartbeat (updated_at)
+// is older than stale-after-ms, so a job whose node died can be resumed elsewhere.
+@Service
+public class BatchJobRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchJobRunner.class);
+
+    private final Map<String, BatchJob> jobs = new LinkedHashMap<>();
+    private final BatchJobCheckpointRepository checkpointRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate claimTransaction;
+    private final MeterRegistry meterRegistry;
+    private final String owner;
+    private final ExecutorService executor;
+    // Jobs running on this node, and the ones asked to stop after their current chunk
+    private final Set<String> running = ConcurrentHashMap.newKeySet();
+    private final Set<String> pauseRequested = ConcurrentHashMap.newKeySet();
+
+    @Value("${app.batch-jobs.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.batch-jobs.chunk-size:1000}")
+    private int defaultChunkSize;
+
+    @Value("${app.batch-jobs.throttle-ms:100}")
+    private long throttleMs;
+
+    @Value("${app.batch-jobs.stale-after-ms:300000}")
+    private long staleAfterMs;
+
+    public BatchJobRunner(List<BatchJob> batchJobs,
+                          BatchJobCheckpointRepository checkpointRepository,
+                          PlatformTransactionManager transactionManager,
+                          MeterRegistry meterRegistry) {
+        for (BatchJob job : batchJobs) {
+            jobs.put(job.name(), job);
+        }
+        this.checkpointRepository = checkpointRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        // The claim must be committed before the job thread starts, even if the caller is
+        // inside a transaction of its own
+        this.claimTransaction = new TransactionTemplate(transactionManager);
+        this.claimTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.meterRegistry = meterRegistry;
+        this.owner = ManagementFactory.getRuntimeMXBean().getName();
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task, "batch-job-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startAutoJobs() {
+        if (!enabled) {
+            return;
+        }
+        for (BatchJob job : jobs.values()) {
+            if (job.autoStart()) {
+                BatchJobCheckpoint checkpoint = checkpointRepository.findById(job.name()).orElse(null);
+                if (checkpoint == null || checkpoint.getStatus() != BatchJobCheckpoint.Status.COMPLETED) {
+                    start(job.name(), false);
+                }
+            }
+        }
+    }
+
+    // Starts or resumes a job; restart=true begins again from the first key.
+    // Returns false if the job is unknown or already running somewhere.
+    public boolean start(String name, boolean restart) {
+        BatchJob job = jobs.get(name);
+        if (job == null || !enabled) {
+            return false;
+        }
+        Boolean claimed = claimTransaction.execute(status -> {
+            LocalDateTime now = LocalDateTime.now();
+            checkpointRepository.createIfAbsent(name, now);
+            if (checkpointRepository.claim(name, owner, BatchJobCheckpoint.Status.RUNNING, now,
+                    now.minus(Duration.ofMillis(staleAfterMs))) == 0) {
+                return false;
+            }
+            if (restart) {
+                checkpointRepository.reset(name, owner, BatchJobCheckpoint.Status.RUNNING);
+            }
+            return true;
+        });
+        if (!Boolean.TRUE.equals(claimed)) {
+            logger.info("⏭️ Batch job {} is already running", name);
+            return false;
+        }
+        pauseRequested.remove(name);
+        running.add(name);
+        executor.execute(() -> run(job));
+        return true;
+    }
+
+    // Stops after the chunk in progress; start() resumes from the checkpoint
+    public boolean pause(String name) {
+        if (!running.contains(name)) {
+            return false;
+        }
+        pauseRequested.add(name);
+        return true;
+    }
+
+    public List<Map<String, Object>> status() {
+        return jobs.keySet().stream().map(this::status).toList();
+    }
+
+    public Map<String, Object> status(String name) {
+        BatchJob job = jobs.get(name);
+        if (job == null) {
+            return null;
+        }
+        Map<String, Object> details = new LinkedHashMap<>();
+        details.put("name", job.name());
+        details.put("description", job.description());
+        BatchJobCheckpoint checkpoint = checkpointRepository.findById(name).orElse(null);
+        if (checkpoint == null) {
+            details.put("status", BatchJobCheckpoint.Status.IDLE);
+            return details;
+        }
+        details.put("status", checkpoint.getStatus());
+        details.put("owner", checkpoint.getOwner());
+        details.put("runningHere", running.contains(name));
+        details.put("lastId", checkpoint.getLastId());
+        details.put("processed", checkpoint.getProcessed());
+        details.put("affected", checkpoint.getAffected());
+        details.put("startedAt", checkpoint.getStartedAt());
+        details.put("updatedAt", checkpoint.getUpdatedAt());
+        details.put("finishedAt", checkpoint.getFinishedAt());
+        details.put("lastError", checkpoint.getLastError());
+        return details;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // Running jobs stop at their next chunk boundary and are left PAUSED
+        pauseRequested.addAll(running);
+        executor.shutdown();
+    }
+
+    private void run(BatchJob job) {
+        String name = job.name();
+        int chunkSize = job.chunkSize() > 0 ? job.chunkSize() : defaultChunkSize;
+        Counter rows = Counter.builder("batch.jobs.rows").tag("job", name).register(meterRegistry);
+        long started = System.currentTimeMillis();
+        long processed = 0;
+        try {
+            long lastId = checkpointRepository.findById(name).map(BatchJobCheckpoint::getLastId).orElse(0L);
+            logger.info("▶️ Batch job {} starting after id {} in chunks of {}", name, lastId, chunkSize);
+            while (true) {
+                if (pauseRequested.remove(name)) {
+                    checkpointRepository.finish(name, owner, BatchJobCheckpoint.Status.RUNNING,
+                            BatchJobCheckpoint.Status.PAUSED, null, LocalDateTime.now());
+                    logger.info("⏸️ Batch job {} paused after id {} ({} rows this run)", name, lastId, processed);
+                    return;
+                }
+                long afterId = lastId;
+                BatchJob.ChunkResult result = transactionTemplate.execute(status -> {
+                    BatchJob.ChunkResult chunk = job.processChunk(afterId, chunkSize);
+                    if (chunk.scanned() > 0 && checkpointRepository.recordChunk(name, owner,
+                            BatchJobCheckpoint.Status.RUNNING, chunk.lastId(), chunk.scanned(),
+                            chunk.affected(), LocalDateTime.now()) == 0) {
+                        // Another node took the job over; roll this chunk back and stop
+                        throw new IllegalStateException("lost ownership of batch job " + name);
+                    }
+                    return chunk;
+                });
+                if (result == null || result.scanned() == 0) {
+                    checkpointRepository.finish(name, owner, BatchJobCheckpoint.Status.RUNNING,
+                            BatchJobCheckpoint.Status.COMPLETED, null, LocalDateTime.now());
+                    long elapsed = Math.max(1, System.currentTimeMillis() - started);
+                    logger.info("✅ Batch job {} completed: {} rows this run in {} ms ({} rows/s)",
+                            name, processed, elapsed, processed * 1000 / elapsed);
+                    return;
+                }
+                job.afterChunkCommitted(result);
+                processed += result.scanned();
+                rows.increment(result.scanned());
+                lastId = result.lastId();
+                if (throttleMs > 0) {
+                    Thread.sleep(throttleMs);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            checkpointRepository.finish(name, owner, BatchJobCheckpoint.Status.RUNNING,
+                    BatchJobCheckpoint.Status.PAUSED, "interrupted", LocalDateTime.now());
+        } catch (RuntimeException e) {
+            logger.error("❌ Batch job {} failed: {}", name, e.getMessage());
+            String message = String.valueOf(e.getMessage());
+            checkpointRepository.finish(name, owner, BatchJobCheckpoint.Status.RUNNING,
+                    BatchJobCheckpoint.Status.FAILED,
+                    message.length() > 1000 ? message.substring(0, 1000) : message, LocalDateTime.now());
+        } finally {
+            running.remove(name);
+            pauseRequested.remove(name);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+// BoundedPasswordEncoder.java - Runs BCrypt on a fixed pool so hashing bursts can't take every core
+package com.paymentgateway.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import com.paymentgateway.exception.PasswordHashingBusyException;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+// At most `threads` hashes run at once and at most `queueCapacity` wait; anything beyond
+// that is refused straight away instead of piling up on request threads. Callers either
+// block on the synchronous PasswordEncoder methods or chain on encodeAsync/matchesAsync.
+//
+// A caller that gives up after max-wait-ms cancels its future. If the hash is still queued
+// it is skipped when its turn comes; if it has started it runs to completion, because BCrypt
+// has no interruption points, and the result is dropped (password.hashing.abandoned).
+// Abandoned work keeps its queue slot or thread until then, so threads + queueCapacity
+// bounds everything in the pool, including work nobody is waiting for any more.
+public class BoundedPasswordEncoder implements PasswordEncoder {
+
+    private static final Logger logger = LoggerFactory.getLogger(BoundedPasswordEncoder.class);
+
+    private final PasswordEncoder delegate;
+    private final ThreadPoolExecutor executor;
+    private final long maxWaitMs;
+    private final Counter rejections;
+    private final Counter abandoned;
+    private final Timer hashTimer;
+
+    public BoundedPasswordEncoder(PasswordEncoder delegate, int threads, int queueCapacity,
+                                  long maxWaitMs, MeterRegistry meterRegistry) {
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.delegate = delegate;
+        this.maxWaitMs = maxWaitMs;
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+                new CustomizableThreadFactory("pwd-hash-"),
+                new ThreadPoolExecutor.AbortPolicy());
+
+        this.rejections = Counter.builder("password.hashing.rejections")
+                .description("Hash requests refused because the queue was full")
+                .register(meterRegistry);
+        this.abandoned = Counter.builder("password.hashing.abandoned")
+                .description("Hashes computed after their caller had already given up")
+                .register(meterRegistry);
+        this.hashTimer = Timer.builder("password.hashing.duration")
+                .description("Time spent computing password hashes")
+                .register(meterRegistry);
+        Gauge.builder("password.hashing.queue", executor, e -> e.getQueue().size())
+                .register(meterRegistry);
+        Gauge.builder("password.hashing.active", executor, ThreadPoolExecutor::getActiveCount)
+                .register(meterRegistry);
+        logger.info("🔐 Password hashing pool: {} threads, queue {}", poolSize, queueCapacity);
+    }
+
+    public CompletableFuture<String> encodeAsync(CharSequence rawPassword) {
+        return submit(() -> delegate.encode(rawPassword));
+    }
+
+    public CompletableFuture<Boolean> matchesAsync(CharSequence rawPassword, String encodedPassword) {
+        return submit(() -> delegate.matches(rawPassword, encodedPassword));
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return await(encodeAsync(rawPassword));
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return await(matchesAsync(rawPassword, encodedPassword));
+    }
+
+    // Only inspects the stored hash prefix, no need to queue it
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        return delegate.upgradeEncoding(encodedPassword);
+    }
+
+    private <T> CompletableFuture<T> submit(Supplier<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                // Cancelled while queued: the caller is gone, don't spend the CPU
+                if (future.isDone()) {
+                    return;
+                }
+                try {
+                    if (!future.complete(hashTimer.record(task))) {
+                        abandoned.increment();
+                    }
+                } catch (RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
+            });
+            return future;
+        } catch (RejectedExecutionException e) {
+            rejections.increment();
+            return CompletableFuture.failedFuture(
+                    new PasswordHashingBusyException("Password hashing is saturated, try again shortly", 1000));
+        }
+    }
+
+    private <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.get(maxWaitMs, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (TimeoutException e) {
+            // Skips the hash if still queued; a running one can't be stopped (see above)
+            future.cancel(false);
+            rejections.increment();
+            throw new PasswordHashingBusyException("Password hashing timed out after " + maxWaitMs + " ms", 1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for password hashing", e);
+        }
+    }
+
+    // Picked up by Spring as the bean's destroy method
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,228 @@
+// EmailBloomFilter.java - Answers "no such email" from memory so unknown addresses never reach Postgres
+package com.paymentgateway.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.paymentgateway.util.EmailNormalizer;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// A Bloom filter over every normalised email in users. "Not present" is definite;
+// "maybe present" still goes to the database. Until the first build has finished,
+// and while disabled, everything is "maybe".
+//
+// Other nodes' registrations arrive through an incremental scan of ids above the last
+// one seen (with some overlap, since identity values can commit out of order), so a
+// user registered elsewhere may be unknown here for up to one refresh interval.
+// Deleted users can't be removed and just cost a query, until the next full rebuild.
+@Component
+public class EmailBloomFilter {
+
+    private static final Logger logger = LoggerFactory.getLogger(EmailBloomFilter.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final JdbcTemplate streamingTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final boolean enabled;
+    private final double falsePositiveRate;
+    private final long refreshOverlap;
+    private final long rebuildIntervalMs;
+
+    private volatile Bits bits;
+    private volatile long expectedInsertions;
+    private volatile boolean ready;
+    private volatile long lastSeenId;
+    private volatile long builtAt;
+    private volatile Queue<String> addedDuringBuild;
+
+    private final Counter definiteNegatives;
+
+    public EmailBloomFilter(JdbcTemplate jdbcTemplate,
+                            PlatformTransactionManager transactionManager,
+                            MeterRegistry meterRegistry,
+                            @Value("${app.email-bloom.enabled:true}") boolean enabled,
+                            @Value("${app.email-bloom.expected-insertions:1000000}") long expectedInsertions,
+                            @Value("${app.email-bloom.false-positive-rate:0.01}") double falsePositiveRate,
+                            @Value("${app.email-bloom.fetch-size:5000}") int fetchSize,
+                            @Value("${app.email-bloom.refresh-overlap:1000}") long refreshOverlap,
+                            @Value("${app.email-bloom.rebuild-interval-ms:86400000}") long rebuildIntervalMs) {
+        this.jdbcTemplate = jdbcTemplate;
+        // Postgres only streams with a fetch size inside a transaction
+        this.streamingTemplate = new JdbcTemplate(jdbcTemplate.getDataSource());
+        this.streamingTemplate.setFetchSize(fetchSize);
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.enabled = enabled;
+        this.falsePositiveRate = falsePositiveRate;
+        this.refreshOverlap = refreshOverlap;
+        this.rebuildIntervalMs = rebuildIntervalMs;
+        this.expectedInsertions = Math.max(1000, expectedInsertions);
+        this.bits = new Bits(this.expectedInsertions, falsePositiveRate);
+
+        this.definiteNegatives = Counter.builder("email.bloom.negatives")
+                .description("Email lookups answered as absent without a query")
+                .register(meterRegistry);
+        Gauge.builder("email.bloom.insertions", this, f -> f.bits.insertions.get())
+                .register(meterRegistry);
+    }
+
+    // False only when the email is certainly not registered
+    public boolean mightContain(String email) {
+        if (!enabled || !ready || email == null) {
+            return true;
+        }
+        if (bits.mightContain(EmailNormalizer.normalize(email))) {
+            return true;
+        }
+        definiteNegatives.increment();
+        return false;
+    }
+
+    public void add(String email) {
+        if (email == null) {
+            return;
+        }
+        String key = EmailNormalizer.normalize(email);
+        // Read the build queue before the bit array: if a rebuild swaps in between, the
+        // queued key is replayed into the new array; if not, it lands in the new one directly
+        Queue<String> pending = addedDuringBuild;
+        bits.put(key);
+        if (pending != null) {
+            pending.add(key);
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    // First run streams the whole table; later runs only pick up new ids
+    @Scheduled(fixedDelayString = "${app.email-bloom.refresh-ms:5000}")
+    public void refresh() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            boolean stale = System.currentTimeMillis() - builtAt > rebuildIntervalMs;
+            if (!ready || stale || bits.insertions.get() > expectedInsertions) {
+                rebuild();
+            } else {
+                Bits current = bits;
+                long from = Math.max(0, lastSeenId - refreshOverlap);
+                long maxId = stream(current, from);
+                lastSeenId = Math.max(lastSeenId, maxId);
+            }
+        } catch (RuntimeException e) {
+            logger.warn("⚠️ Email bloom filter refresh failed: {}", e.getMessage());
+        }
+    }
+
+    private void rebuild() {
+        long start = System.currentTimeMillis();
+        // Past the sizing the false-positive rate climbs quickly, so grow with headroom
+        long count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM users", Long.class);
+        long capacity = Math.max(expectedInsertions, count * 2);
+        Bits fresh = new Bits(capacity, falsePositiveRate);
+
+        Queue<String> pending = new ConcurrentLinkedQueue<>();
+        addedDuringBuild = pending;
+        long maxId = stream(fresh, 0);
+
+        bits = fresh;
+        addedDuringBuild = null;
+        for (String key : pending) {
+            fresh.put(key);
+        }
+        expectedInsertions = capacity;
+        lastSeenId = maxId;
+        builtAt = System.currentTimeMillis();
+        ready = true;
+        logger.info("🌸 Email bloom filter built: {} emails, {} bits, {} hashes in {} ms",
+                fresh.insertions.get(), fresh.bitCount, fresh.hashCount, System.currentTimeMillis() - start);
+    }
+
+    // Streams (id, email) through a cursor instead of materialising the table; returns the highest id seen
+    private long stream(Bits target, long fromId) {
+        AtomicLong maxId = new AtomicLong(fromId);
+        readOnlyTransaction.executeWithoutResult(status ->
+                streamingTemplate.query("SELECT id, email FROM users WHERE id > ? ORDER BY id", rs -> {
+                    target.put(EmailNormalizer.normalize(rs.getString(2)));
+                    maxId.accumulateAndGet(rs.getLong(1), Math::max);
+                }, fromId));
+        return maxId.get();
+    }
+
+    // Bit array of optimal size for n and p, k probes by double hashing (Kirsch-Mitzenmacher)
+    static final class Bits {
+        final long bitCount;
+        final int hashCount;
+        final AtomicLongArray words;
+        final AtomicLong insertions = new AtomicLong();
+
+        Bits(long expected, double fpp) {
+            double ln2 = Math.log(2);
+            long m = (long) Math.ceil(-expected * Math.log(fpp) / (ln2 * ln2));
+            this.bitCount = Math.max(64, (m + 63) / 64 * 64);
+            this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expected * ln2));
+            this.words = new AtomicLongArray((int) (bitCount / 64));
+        }
+
+        void put(String key) {
+            long h1 = hash(key);
+            long h2 = mix(h1 ^ 0x9E3779B97F4A7C15L) | 1;
+            boolean changed = false;
+            for (int i = 0; i < hashCount; i++) {
+                long bit = Long.remainderUnsigned(h1 + i * h2, bitCount);
+                int word = (int) (bit >>> 6);
+                long mask = 1L << bit;
+                long old = words.getAndAccumulate(word, mask, (a, b) -> a | b);
+                changed |= (old & mask) == 0;
+            }
+            if (changed) {
+                insertions.incrementAndGet();
+            }
+        }
+
+        boolean mightContain(String key) {
+            long h1 = hash(key);
+            long h2 = mix(h1 ^ 0x9E3779B97F4A7C15L) | 1;
+            for (int i = 0; i < hashCount; i++) {
+                long bit = Long.remainderUnsigned(h1 + i * h2, bitCount);
+                if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static long hash(String key) {
+            long h = 0xCBF29CE484222325L;
+            for (int i = 0; i < key.length(); i++) {
+                h ^= key.charAt(i);
+                h *= 0x100000001B3L;
+            }
+            return mix(h);
+        }
+
+        private static long mix(long h) {
+            h ^= h >>> 33;
+            h *= 0xFF51AFD7ED558CCDL;
+            h ^= h >>> 33;
+            h *= 0xC4CEB9FE1A85EC53L;
+            return h ^ (h >>> 33);
+        }
+    }
+}
@@ -0,0 +1,206 @@
+// EmailCircuitBreaker.java - Stops hammering the mail relay while it is failing or slow
+package com.paymentgateway.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Component
+public class EmailCircuitBreaker {
+
+    private static final Logger logger = LoggerFactory.getLogger(EmailCircuitBreaker.class);
+
+    public enum State {
+        CLOSED,     // calls flow, outcomes are recorded
+        OPEN,       // calls fail fast until the wait duration has passed
+        HALF_OPEN   // a few probe calls decide whether to close or re-open
+    }
+
+    private static final byte FAILED = 1;
+    private static final byte SLOW = 2;
+
+    // Outcomes of the last N calls
+    @Value("${app.email.circuit.window-size:20}")
+    private int windowSize;
+
+    // Don't judge the relay on fewer calls than this
+    @Value("${app.email.circuit.minimum-calls:5}")
+    private int minimumCalls;
+
+    @Value("${app.email.circuit.failure-rate-threshold:50}")
+    private int failureRateThreshold;
+
+    @Value("${app.email.circuit.slow-call-rate-threshold:80}")
+    private int slowCallRateThreshold;
+
+    @Value("${app.email.circuit.slow-call-duration-ms:5000}")
+    private long slowCallDurationMs;
+
+    @Value("${app.email.circuit.open-duration-ms:30000}")
+    private long openDurationMs;
+
+    @Value("${app.email.circuit.half-open-probes:2}")
+    private int halfOpenProbes;
+
+    private State state = State.CLOSED;
+    private byte[] window;
+    private int windowPos;
+    private int recorded;
+    private int failures;
+    private int slowCalls;
+    private long openedAt;
+    private int probesStarted;
+    private int probesSucceeded;
+
+    private final AtomicLong rejectedCalls = new AtomicLong();
+    private final AtomicLong transitions = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        window = new byte[Math.max(1, windowSize)];
+    }
+
+    // False means fail fast: do not touch SMTP right now
+    public synchronized boolean tryAcquirePermission() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.currentTimeMillis() - openedAt < openDurationMs) {
+                    rejectedCalls.incrementAndGet();
+                    return false;
+                }
+                transitionTo(State.HALF_OPEN);
+                // fall through to hand out the first probe
+            case HALF_OPEN:
+            default:
+                if (probesStarted < halfOpenProbes) {
+                    probesStarted++;
+                    return true;
+                }
+                rejectedCalls.incrementAndGet();
+                return false;
+        }
+    }
+
+    // Cheap check for pollers that want to skip a whole batch while open
+    public synchronized boolean isCallPermitted() {
+        if (state == State.OPEN) {
+            return System.currentTimeMillis() - openedAt >= openDurationMs;
+        }
+        return state == State.CLOSED || probesStarted < halfOpenProbes;
+    }
+
+    public void onSuccess(long durationMs) {
+        record(false, durationMs);
+    }
+
+    public void onError(long durationMs) {
+        record(true, durationMs);
+    }
+
+    private synchronized void record(boolean failed, long durationMs) {
+        boolean slow = durationMs >= slowCallDurationMs;
+
+        if (state == State.HALF_OPEN) {
+            if (failed || slow) {
+                logger.warn("⚡ Email circuit probe {} after {} ms, re-opening", failed ? "failed" : "was slow", durationMs);
+                transitionTo(State.OPEN);
+            } else if (++probesSucceeded >= halfOpenProbes) {
+                transitionTo(State.CLOSED);
+            }
+            return;
+        }
+        if (state == State.OPEN) {
+            // A call that started before the circuit opened; its outcome no longer matters
+            return;
+        }
+
+        byte outcome = (byte) ((failed ? FAILED : 0) | (slow ? SLOW : 0));
+        byte evicted = window[windowPos];
+        if (recorded == window.length) {
+            if ((evicted & FAILED) != 0) failures--;
+            if ((evicted & SLOW) != 0) slowCalls--;
+        } else {
+            recorded++;
+        }
+        window[windowPos] = outcome;
+        windowPos = (windowPos + 1) % window.length;
+        if (failed) failures++;
+        if (slow) slowCalls++;
+
+        if (recorded >= minimumCalls) {
+            int failureRate = failures * 100 / recorded;
+            int slowRate = slowCalls * 100 / recorded;
+            if (failureRate >= failureRateThreshold || slowRate >= slowCallRateThreshold) {
+                logger.warn("⚡ Email circuit opening: failureRate={}%, slowCallRate={}% over {} calls",
+                        failureRate, slowRate, recorded);
+                transitionTo(State.OPEN);
+            }
+        }
+    }
+
+    private void transitionTo(State next) {
+        if (state == next) {
+            return;
+        }
+        logger.info("⚡ Email circuit {} -> {}", state, next);
+        state = next;
+        transitions.incrementAndGet();
+        probesStarted = 0;
+        probesSucceeded = 0;
+        if (next == State.OPEN) {
+            openedAt = System.currentTimeMillis();
+        }
+        if (next == State.CLOSED) {
+            resetWindow();
+        }
+    }
+
+    private void resetWindow() {
+        Arrays.fill(window, (byte) 0);
+        windowPos = 0;
+        recorded = 0;
+        failures = 0;
+        slowCalls = 0;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    // How long a fast-failed caller should wait before trying again
+    public synchronized long getRemainingOpenMs() {
+        if (state != State.OPEN) {
+            return 0;
+        }
+        return Math.max(0, openDurationMs - (System.currentTimeMillis() - openedAt));
+    }
+
+    public synchronized Map<String, Object> snapshot() {
+        Map<String, Object> details = new LinkedHashMap<>();
+        details.put("state", state.name());
+        details.put("bufferedCalls", recorded);
+        details.put("failureRate", recorded == 0 ? 0 : failures * 100 / recorded);
+        details.put("slowCallRate", recorded == 0 ? 0 : slowCalls * 100 / recorded);
+        details.put("failureRateThreshold", failureRateThreshold);
+        details.put("slowCallRateThreshold", slowCallRateThreshold);
+        details.put("slowCallDurationMs", slowCallDurationMs);
+        details.put("rejectedCalls", rejectedCalls.get());
+        details.put("transitions", transitions.get());
+        if (state == State.OPEN) {
+            details.put("openedAt", Instant.ofEpochMilli(openedAt).toString());
+            details.put("retryInMs", Math.max(0, openDurationMs - (System.currentTimeMillis() - openedAt)));
+        }
+        return details;
+    }
+}
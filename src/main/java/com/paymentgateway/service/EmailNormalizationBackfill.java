@@ -0,0 +1,94 @@
+// EmailNormalizationBackfill.java - Fills users.email_normalized for rows created before the column existed
+package com.paymentgateway.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import com.paymentgateway.util.EmailNormalizer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// Walks users in id order through BatchJobRunner, one chunk per transaction, so no long
+// lock or huge undo log. Normalisation happens in Java with the same EmailNormalizer the
+// lookups use; SQL lower() can disagree with it on non-ASCII input. Rows whose normalised
+// email already belongs to another row (mixed-case duplicates) are left NULL and logged
+// for manual merging.
+@Component
+public class EmailNormalizationBackfill implements BatchJob {
+
+    private static final Logger logger = LoggerFactory.getLogger(EmailNormalizationBackfill.class);
+
+    public static final String NAME = "email-normalized-backfill";
+
+    private static final String SELECT_CHUNK =
+            "SELECT id, email FROM users WHERE email_normalized IS NULL AND id > ? ORDER BY id LIMIT ?";
+    // The NOT EXISTS also sees rows updated earlier in the same batch, so two spellings of one
+    // address in the same chunk can't both claim it
+    private static final String UPDATE_ROW =
+            "UPDATE users SET email_normalized = ? WHERE id = ? AND email_normalized IS NULL " +
+            "AND NOT EXISTS (SELECT 1 FROM users o WHERE o.email_normalized = ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${app.users.email-backfill.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.users.email-backfill.chunk-size:1000}")
+    private int chunkSize;
+
+    public EmailNormalizationBackfill(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public String description() {
+        return "Fill users.email_normalized for rows created before the column existed";
+    }
+
+    @Override
+    public int chunkSize() {
+        return chunkSize;
+    }
+
+    @Override
+    public boolean autoStart() {
+        return enabled;
+    }
+
+    @Override
+    public ChunkResult processChunk(long afterId, int size) {
+        List<Map<String, Object>> rows = jdbcTemplate.queryForList(SELECT_CHUNK, afterId, size);
+        if (rows.isEmpty()) {
+            return ChunkResult.done(afterId);
+        }
+        List<Object[]> args = new ArrayList<>(rows.size());
+        long maxId = afterId;
+        for (Map<String, Object> row : rows) {
+            long id = ((Number) row.get("id")).longValue();
+            String normalized = EmailNormalizer.normalize((String) row.get("email"));
+            args.add(new Object[] { normalized, id, normalized });
+            maxId = Math.max(maxId, id);
+        }
+        int[] counts = jdbcTemplate.batchUpdate(UPDATE_ROW, args);
+        long updated = 0;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                updated++;
+            } else {
+                logger.warn("⚠️ users.id={} not normalised: '{}' already taken by another row",
+                        args.get(i)[1], args.get(i)[0]);
+            }
+        }
+        return new ChunkResult(rows.size(), maxId, updated);
+    }
+}
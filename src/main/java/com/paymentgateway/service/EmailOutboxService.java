@@ -0,0 +1,362 @@
+// EmailOutboxService.java - Durable email queue: written with the business change, sent by a poller
+package com.paymentgateway.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.paymentgateway.config.AsyncConfig;
+import com.paymentgateway.entity.EmailOutbox;
+import com.paymentgateway.exception.EmailCircuitOpenException;
+import com.paymentgateway.repository.EmailOutboxRepository;
+
+import java.lang.management.ManagementFactory;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+@Service
+public class EmailOutboxService {
+
+    private static final Logger logger = LoggerFactory.getLogger(EmailOutboxService.class);
+
+    private final EmailOutboxRepository outboxRepository;
+    private final EmailService emailService;
+    private final EmailCircuitBreaker circuitBreaker;
+    private final TaskExecutor sendExecutor;
+    private final TaskScheduler taskScheduler;
+    private final TransactionTemplate transactionTemplate;
+    private final Counter rejected;
+    // Lease holder recorded on claimed rows
+    private final String owner = ManagementFactory.getRuntimeMXBean().getName();
+
+    // When disabled, emails go straight to the async executor as before
+    @Value("${app.email.outbox.enabled:true}")
+    private boolean outboxEnabled;
+
+    @Value("${app.email.outbox.batch-size:50}")
+    private int batchSize;
+
+    // How long a claimed row stays reserved for the claiming node
+    @Value("${app.email.outbox.lease-seconds:300}")
+    private long leaseSeconds;
+
+    @Value("${app.email.outbox.max-attempts:8}")
+    private int maxAttempts;
+
+    @Value("${app.email.outbox.initial-backoff-seconds:30}")
+    private long initialBackoffSeconds;
+
+    @Value("${app.email.outbox.max-backoff-seconds:3600}")
+    private long maxBackoffSeconds;
+
+    // How long each type's payload stays usable, matching the expiry of the code or token it carries
+    @Value("${app.email.outbox.otp-ttl-seconds:600}")
+    private long otpTtlSeconds;
+
+    @Value("${app.email.outbox.reset-ttl-seconds:600}")
+    private long resetTtlSeconds;
+
+    @Value("${app.email.outbox.activation-ttl-seconds:86400}")
+    private long activationTtlSeconds;
+
+    // SENT and DEAD rows are deleted this long after their last attempt
+    @Value("${app.email.outbox.retention-hours:72}")
+    private long retentionHours;
+
+    @Value("${app.email.outbox.purge-chunk-size:500}")
+    private int purgeChunkSize;
+
+    private final AtomicBoolean polling = new AtomicBoolean();
+
+    public EmailOutboxService(EmailOutboxRepository outboxRepository,
+                              EmailService emailService,
+                              EmailCircuitBreaker circuitBreaker,
+                              @Qualifier(AsyncConfig.OUTBOX_EXECUTOR) TaskExecutor sendExecutor,
+                              TaskScheduler taskScheduler,
+                              PlatformTransactionManager transactionManager,
+                              MeterRegistry meterRegistry) {
+        this.outboxRepository = outboxRepository;
+        this.emailService = emailService;
+        this.circuitBreaker = circuitBreaker;
+        this.sendExecutor = sendExecutor;
+        this.taskScheduler = taskScheduler;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.rejected = Counter.builder("email.outbox.rejected")
+                .description("Outbox rows handed back because the send executor was full")
+                .register(meterRegistry);
+    }
+
+    @Transactional
+    public void enqueueActivationEmail(String toEmail, String userName) {
+        enqueue(EmailOutbox.Type.ACTIVATION, toEmail, userName);
+    }
+
+    // The activation token (signed or stored) travels on a second payload line and ends up in the link
+    @Transactional
+    public void enqueueActivationEmail(String toEmail, String userName, String activationToken) {
+        enqueue(EmailOutbox.Type.ACTIVATION, toEmail,
+                activationToken == null ? userName : userName + "\n" + activationToken);
+    }
+
+    @Transactional
+    public void enqueueOtpEmail(String toEmail, String otpCode) {
+        enqueue(EmailOutbox.Type.OTP, toEmail, otpCode);
+    }
+
+    @Transactional
+    public void enqueuePasswordResetEmail(String toEmail, String otpCode) {
+        enqueue(EmailOutbox.Type.PASSWORD_RESET, toEmail, otpCode);
+    }
+
+    private void enqueue(EmailOutbox.Type type, String toEmail, String payload) {
+        if (!outboxEnabled) {
+            sendDirect(type, toEmail, payload);
+            return;
+        }
+
+        // Joins the caller's transaction, so the email exists if and only if the change committed
+        EmailOutbox row = new EmailOutbox(type, toEmail, payload);
+        row.setDeliverBy(row.getCreatedAt().plusSeconds(ttlSeconds(type)));
+        outboxRepository.save(row);
+        logger.info("📥 Queued {} email for {}", type, toEmail);
+
+        // Don't wait for the next poll tick once the row is visible
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    triggerPoll();
+                }
+            });
+        }
+    }
+
+    private void sendDirect(EmailOutbox.Type type, String toEmail, String payload) {
+        try {
+            switch (type) {
+                case ACTIVATION:
+                    emailService.sendActivationEmail(toEmail, payload);
+                    break;
+                case OTP:
+                    emailService.sendOtpEmail(toEmail, payload);
+                    break;
+                case PASSWORD_RESET:
+                    emailService.sendPasswordResetEmail(toEmail, payload);
+                    break;
+            }
+        } catch (Exception e) {
+            // Queue full or executor shut down - the business operation still succeeds
+            logger.warn("⚠️ Could not hand {} email for {} to the executor: {}", type, toEmail, e.getMessage());
+        }
+    }
+
+    // Runs on the scheduler, never on an email worker that the poll itself waits for
+    private void triggerPoll() {
+        try {
+            taskScheduler.schedule(this::pollOutbox, Instant.now());
+        } catch (Exception e) {
+            logger.debug("Outbox wake-up skipped: {}", e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.email.outbox.poll-interval-ms:5000}")
+    public void pollOutbox() {
+        if (!outboxEnabled || !polling.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            List<EmailOutbox> batch;
+            do {
+                // Leave rows queued while the relay is known to be down
+                if (!circuitBreaker.isCallPermitted()) {
+                    logger.debug("Email circuit open, outbox poll skipped");
+                    return;
+                }
+                batch = claimBatch();
+                if (!batch.isEmpty()) {
+                    deliverBatch(batch);
+                }
+            } while (batch.size() == batchSize);
+        } catch (Exception e) {
+            logger.error("❌ Email outbox poll failed: {}", e.getMessage(), e);
+        } finally {
+            polling.set(false);
+        }
+    }
+
+    // Short transaction: lock due rows, stamp a lease, commit. SMTP happens outside it.
+    private List<EmailOutbox> claimBatch() {
+        List<EmailOutbox> claimed = transactionTemplate.execute(status -> {
+            LocalDateTime now = LocalDateTime.now();
+            List<EmailOutbox> rows = outboxRepository.lockDueBatch(now, batchSize);
+            if (!rows.isEmpty()) {
+                List<Long> ids = rows.stream().map(EmailOutbox::getId).collect(Collectors.toList());
+                outboxRepository.markClaimed(ids, EmailOutbox.Status.SENDING, now.plusSeconds(leaseSeconds), owner);
+            }
+            return rows;
+        });
+        return claimed != null ? claimed : new ArrayList<>();
+    }
+
+    private void deliverBatch(List<EmailOutbox> batch) {
+        List<CompletableFuture<Void>> sends = new ArrayList<>(batch.size());
+        for (EmailOutbox row : batch) {
+            try {
+                sends.add(CompletableFuture.runAsync(() -> deliverOne(row), sendExecutor));
+            } catch (RejectedExecutionException e) {
+                // Release the lease now rather than let the row sit claimed until it runs out
+                rejected.increment();
+                LocalDateTime now = LocalDateTime.now();
+                outboxRepository.markDeferred(row.getId(), owner, now, EmailOutbox.Status.PENDING, now);
+                logger.warn("⚠️ Outbox email {} not dispatched, returned to the queue: {}", row.getId(), e.getMessage());
+            }
+        }
+        try {
+            // The outbox executor never drops accepted tasks; the bound only covers a hung SMTP call
+            CompletableFuture.allOf(sends.toArray(new CompletableFuture[0])).get(leaseSeconds, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            logger.warn("⚠️ Outbox batch still in flight after {}s; unfinished rows will be reclaimed", leaseSeconds);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            logger.error("❌ Outbox batch failed: {}", e.getMessage(), e);
+        }
+    }
+
+    private void deliverOne(EmailOutbox row) {
+        int attempt = row.getAttempts() + 1;
+        int updated;
+        if (isPastDeliverBy(row, LocalDateTime.now())) {
+            updated = expire(row);
+        } else {
+            updated = attemptDelivery(row, attempt);
+        }
+        if (updated == 0) {
+            logger.warn("⚠️ Lease on outbox email {} expired before its result was recorded; it will be retried",
+                    row.getId());
+        }
+    }
+
+    private int attemptDelivery(EmailOutbox row, int attempt) {
+        int updated;
+        try {
+            emailService.deliver(row.getEmailType(), row.getRecipient(), row.getPayload());
+            updated = outboxRepository.markSent(row.getId(), owner, EmailOutbox.Status.SENT, LocalDateTime.now());
+        } catch (EmailCircuitOpenException e) {
+            LocalDateTime next = LocalDateTime.now().plusNanos(e.getRetryAfterMs() * 1_000_000L);
+            if (isPastDeliverBy(row, next)) {
+                return expire(row);
+            }
+            updated = outboxRepository.markDeferred(row.getId(), owner, LocalDateTime.now(),
+                    EmailOutbox.Status.PENDING, next);
+        } catch (Exception e) {
+            String error = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+            if (error.length() > 1000) {
+                error = error.substring(0, 1000);
+            }
+            LocalDateTime next = LocalDateTime.now().plusSeconds(backoffSeconds(attempt));
+            if (attempt < maxAttempts && isPastDeliverBy(row, next)) {
+                // The next try would land after the code expired; stop here
+                updated = outboxRepository.markDead(row.getId(), owner, LocalDateTime.now(),
+                        EmailOutbox.Status.DEAD, error);
+                logger.error("💀 {} email {} to {} dead-lettered after {} attempts, next retry past its deadline: {}",
+                        row.getEmailType(), row.getId(), row.getRecipient(), attempt, error);
+            } else if (attempt >= maxAttempts) {
+                updated = outboxRepository.markDead(row.getId(), owner, LocalDateTime.now(),
+                        EmailOutbox.Status.DEAD, error);
+                logger.error("💀 {} email {} to {} dead-lettered after {} attempts: {}",
+                        row.getEmailType(), row.getId(), row.getRecipient(), attempt, error);
+            } else {
+                updated = outboxRepository.markFailed(row.getId(), owner, LocalDateTime.now(),
+                        EmailOutbox.Status.PENDING, next, error);
+                logger.warn("⚠️ {} email {} to {} failed (attempt {}), retrying at {}: {}",
+                        row.getEmailType(), row.getId(), row.getRecipient(), attempt, next, error);
+            }
+        }
+        return updated;
+    }
+
+    // Dead-lettered without a send: the code or token it carries is no longer valid
+    private int expire(EmailOutbox row) {
+        logger.warn("⌛ {} email {} to {} not sent: past its deliver-by time {}",
+                row.getEmailType(), row.getId(), row.getRecipient(), row.getDeliverBy());
+        return outboxRepository.markDead(row.getId(), owner, LocalDateTime.now(), EmailOutbox.Status.DEAD,
+                "Expired before delivery");
+    }
+
+    // Rows queued before deliver_by existed have none and are sent as before
+    private static boolean isPastDeliverBy(EmailOutbox row, LocalDateTime at) {
+        return row.getDeliverBy() != null && !at.isBefore(row.getDeliverBy());
+    }
+
+    private long ttlSeconds(EmailOutbox.Type type) {
+        switch (type) {
+            case OTP:
+                return otpTtlSeconds;
+            case PASSWORD_RESET:
+                return resetTtlSeconds;
+            case ACTIVATION:
+            default:
+                return activationTtlSeconds;
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.email.outbox.purge-interval-ms:3600000}")
+    public void purgeFinished() {
+        if (!outboxEnabled) {
+            return;
+        }
+        LocalDateTime before = LocalDateTime.now().minusHours(retentionHours);
+        long total = 0;
+        int deleted;
+        try {
+            // Short statements so the purge never holds many row locks at once
+            do {
+                deleted = outboxRepository.deleteFinishedChunk(before, purgeChunkSize);
+                total += deleted;
+            } while (deleted == purgeChunkSize);
+        } catch (Exception e) {
+            logger.error("❌ Email outbox purge failed: {}", e.getMessage(), e);
+        }
+        if (total > 0) {
+            logger.info("🧹 Purged {} finished outbox emails older than {}", total, before);
+        }
+    }
+
+    // initial * 2^(attempt-1), capped, with up to 20% jitter so retries from many rows spread out
+    private long backoffSeconds(int attempt) {
+        long delay = initialBackoffSeconds << Math.min(attempt - 1, 20);
+        delay = Math.min(delay, maxBackoffSeconds);
+        long jitter = (long) (delay * 0.2 * Math.random());
+        return delay + jitter;
+    }
+
+    public long countPending() {
+        return outboxRepository.countByStatus(EmailOutbox.Status.PENDING);
+    }
+
+    public long countDead() {
+        return outboxRepository.countByStatus(EmailOutbox.Status.DEAD);
+    }
+}
@@ -5,21 +5,53 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.mail.javamail.JavaMailSender;
-import org.springframework.mail.javamail.MimeMessageHelper;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
+import com.paymentgateway.config.AsyncConfig;
+import com.paymentgateway.entity.EmailOutbox;
+import com.paymentgateway.exception.EmailCircuitOpenException;
+
+import jakarta.mail.Message;
 import jakarta.mail.MessagingException;
+import jakarta.mail.internet.InternetAddress;
 import jakarta.mail.internet.MimeMessage;
+import jakarta.mail.internet.MimeUtility;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 
 @Service
 public class EmailService {
     
     private static final Logger logger = LoggerFactory.getLogger(EmailService.class);
     
+    private static final String CHARSET = "UTF-8";
+    
+    // Subject headers are MIME-encoded once here rather than on every send
+    private static final String ACTIVATION_SUBJECT = encodeSubject("Welcome to Kcoders - Activate Your Account");
+    private static final String OTP_SUBJECT = encodeSubject("Kcoders - Your Login Verification Code");
+    private static final String PASSWORD_RESET_SUBJECT = encodeSubject("Kcoders - Password Reset Verification Code");
+    
+    // Parsed once at startup; rendering only fills the placeholders
+    private final EmailTemplate activationTemplate =
+            EmailTemplate.load("email-templates/activation.html", "userName", "activationLink");
+    private final EmailTemplate otpTemplate =
+            EmailTemplate.load("email-templates/otp.html", "otpCode");
+    private final EmailTemplate passwordResetTemplate =
+            EmailTemplate.load("email-templates/password-reset.html", "otpCode");
+    
     @Autowired(required = false)
     private JavaMailSender mailSender;
     
+    // Reuses connections instead of a fresh EHLO/STARTTLS/AUTH per message
+    @Autowired
+    private SmtpTransportPool transportPool;
+    
+    @Autowired
+    private EmailCircuitBreaker circuitBreaker;
+    
     public boolean isEmailConfigured() {
         boolean configured = mailSender != null;
         logger.info("📧 Email service configured: {}", configured);
@@ -27,34 +59,12 @@ public class EmailService {
     }
     
     // Method for activation email - This one works
-    @Async
+    @Async(AsyncConfig.EMAIL_EXECUTOR)
     public void sendActivationEmail(String toEmail, String userName) {
-        logger.info("🎯 SENDING ACTIVATION EMAIL to: {}, User: {}", toEmail, userName);
-        
-        if (!isEmailConfigured()) {
-            logger.warn("📧 Email service not configured. Would send activation email to: {}", toEmail);
-            System.out.println("=== ACTIVATION EMAIL (DEVELOPMENT) ===");
-            System.out.println("To: " + toEmail);
-            System.out.println("User: " + userName);
-            System.out.println("Activation Link: https://kcoders.onrender.com/api/auth/activate?email=" + toEmail); 
-            //System.out.println("Activation Link: http://localhost:10000/api/auth/activate?email=" + toEmail);
-            System.out.println("=======================================");
-            return;
-        }
-        
         try {
-            MimeMessage message = mailSender.createMimeMessage();
-            MimeMessageHelper helper = new MimeMessageHelper(message, true, "UTF-8");
-            
-            helper.setTo(toEmail);
-            helper.setSubject("Welcome to Kcoders - Activate Your Account");
-            
-            // Use string concatenation instead of .formatted() to avoid the formatting error
-            String emailContent = buildActivationEmailContent(userName, toEmail);
-            helper.setText(emailContent, true);
-            
-            mailSender.send(message);
-            logger.info("✅ Activation email sent successfully to: {}", toEmail);
+            deliverActivationEmail(toEmail, userName);
+        } catch (EmailCircuitOpenException e) {
+            logger.warn("⚡ Activation email to {} skipped: {}", toEmail, e.getMessage());
         } catch (MessagingException e) {
             logger.error("❌ Failed to send activation email to: {}", toEmail, e);
             System.out.println("❌ Activation email sending failed for: " + toEmail);
@@ -62,33 +72,12 @@ public class EmailService {
     }
     
     // Method for OTP email - Fixed version
-    @Async
+    @Async(AsyncConfig.EMAIL_EXECUTOR)
     public void sendOtpEmail(String toEmail, String otpCode) {
-        logger.info("🎯 SENDING OTP EMAIL to: {}, OTP: {}", toEmail, otpCode);
-        
-        if (!isEmailConfigured()) {
-            logger.warn("📧 Email service not configured. OTP for {}: {}", toEmail, otpCode);
-            System.out.println("=== OTP EMAIL (DEVELOPMENT) ===");
-            System.out.println("To: " + toEmail);
-            System.out.println("OTP Code: " + otpCode);
-            System.out.println("Use this OTP to login: " + otpCode);
-            System.out.println("===============================");
-            return;
-        }
-        
         try {
-            MimeMessage message = mailSender.createMimeMessage();
-            MimeMessageHelper helper = new MimeMessageHelper(message, true, "UTF-8");
-            
-            helper.setTo(toEmail);
-            helper.setSubject("Kcoders - Your Login Verification Code");
-            
-            // Use the fixed OTP email content builder
-            String emailContent = buildOtpEmailContent(otpCode);
-            helper.setText(emailContent, true);
-            
-            mailSender.send(message);
-            logger.info("✅ OTP email sent successfully to: {}", toEmail);
+            deliverOtpEmail(toEmail, otpCode);
+        } catch (EmailCircuitOpenException e) {
+            logger.warn("⚡ OTP email to {} skipped: {}", toEmail, e.getMessage());
         } catch (MessagingException e) {
             logger.error("❌ Failed to send OTP email to: {}", toEmail, e);
             System.out.println("❌ OTP email sending failed for: " + toEmail);
@@ -97,94 +86,86 @@ public class EmailService {
     }
     
     // Alternative OTP email method with username
-    @Async
+    @Async(AsyncConfig.EMAIL_EXECUTOR)
     public void sendOtpEmail(String toEmail, String otpCode, String userName) {
         logger.info("🎯 SENDING OTP EMAIL to: {}, OTP: {}, User: {}", toEmail, otpCode, userName);
         // Call the 2-parameter version
         sendOtpEmail(toEmail, otpCode);
     }
 
-    // Fixed email content builders without .formatted()
-    private String buildActivationEmailContent(String userName, String email) {
-        String activationLink = "http://localhost:10000/api/auth/activate?email=" + email;
+    // Other email methods (password reset, etc.)
+    @Async(AsyncConfig.EMAIL_EXECUTOR)
+    public void sendPasswordResetEmail(String toEmail, String otpCode) {
+        try {
+            deliverPasswordResetEmail(toEmail, otpCode);
+        } catch (EmailCircuitOpenException e) {
+            logger.warn("⚡ Password reset email to {} skipped: {}", toEmail, e.getMessage());
+        } catch (MessagingException e) {
+            logger.error("❌ Failed to send password reset email to: {}", toEmail, e);
+        }
+    }
+    
+    // Synchronous delivery used by the outbox poller; failures propagate so the row can be retried
+    public void deliver(EmailOutbox.Type type, String toEmail, String payload) throws MessagingException {
+        switch (type) {
+            case ACTIVATION:
+                deliverActivationEmail(toEmail, payload);
+                break;
+            case OTP:
+                deliverOtpEmail(toEmail, payload);
+                break;
+            case PASSWORD_RESET:
+                deliverPasswordResetEmail(toEmail, payload);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown email type: " + type);
+        }
+    }
+    
+    private void deliverActivationEmail(String toEmail, String payload) throws MessagingException {
+        // "userName" or "userName\ntoken" (see EmailOutboxService.enqueueActivationEmail)
+        int newline = payload == null ? -1 : payload.indexOf('\n');
+        String userName = newline < 0 ? payload : payload.substring(0, newline);
+        String tokenParam = newline < 0 ? ""
+                : "&token=" + URLEncoder.encode(payload.substring(newline + 1), StandardCharsets.UTF_8);
+        // "+" and "&" are legal in an address but mean something else in a query string
+        String emailParam = URLEncoder.encode(toEmail, StandardCharsets.UTF_8);
+        logger.info("🎯 SENDING ACTIVATION EMAIL to: {}, User: {}", toEmail, userName);
+        
+        if (!isEmailConfigured()) {
+            logger.warn("📧 Email service not configured. Would send activation email to: {}", toEmail);
+            System.out.println("=== ACTIVATION EMAIL (DEVELOPMENT) ===");
+            System.out.println("To: " + toEmail);
+            System.out.println("User: " + userName);
+            System.out.println("Activation Link: https://kcoders.onrender.com/api/auth/activate?email=" + emailParam + tokenParam);
+            //System.out.println("Activation Link: http://localhost:10000/api/auth/activate?email=" + toEmail);
+            System.out.println("=======================================");
+            return;
+        }
         
-        return "<!DOCTYPE html>" +
-               "<html>" +
-               "<head>" +
-               "    <meta charset=\"UTF-8\">" +
-               "    <style>" +
-               "        body { font-family: Arial, sans-serif; line-height: 1.6; color: #333; }" +
-               "        .container { max-width: 600px; margin: 0 auto; padding: 20px; }" +
-               "        .header { background: linear-gradient(135deg, #667eea 0%, #764ba2 100%); color: white; padding: 30px; text-align: center; border-radius: 10px 10px 0 0; }" +
-               "        .content { background: #f9f9f9; padding: 30px; border-radius: 0 0 10px 10px; }" +
-               "        .activation-btn { display: inline-block; padding: 12px 24px; background: #667eea; color: white; text-decoration: none; border-radius: 5px; margin: 20px 0; }" +
-               "        .footer { text-align: center; margin-top: 20px; font-size: 12px; color: #666; }" +
-               "    </style>" +
-               "</head>" +
-               "<body>" +
-               "    <div class=\"container\">" +
-               "        <div class=\"header\">" +
-               "            <h1>Kcoders</h1>" +
-               "            <h2>Activate Your Account</h2>" +
-               "        </div>" +
-               "        <div class=\"content\">" +
-               "            <p>Hello <strong>" + userName + "</strong>,</p>" +
-               "            <p>Welcome to Kcoders! Thank you for registering with us.</p>" +
-               "            <p>To activate your account and start using our services, please click the button below:</p>" +
-               "            <div style=\"text-align: center;\">" +
-               "                <a href=\"" + activationLink + "\" class=\"activation-btn\">Activate My Account</a>" +
-               "            </div>" +
-               "            <p>Or copy and paste this link in your browser:<br>" +
-               "            <code>" + activationLink + "</code></p>" +
-               "            <p>If you didn't create an account with us, please ignore this email.</p>" +
-               "            <p>Best regards,<br>The Kcoders Team</p>" +
-               "        </div>" +
-               "        <div class=\"footer\">" +
-               "            <p>&copy; 2025 Kcoders. All rights reserved.</p>" +
-               "        </div>" +
-               "    </div>" +
-               "</body>" +
-               "</html>";
+        String activationLink = "http://localhost:10000/api/auth/activate?email=" + emailParam + tokenParam;
+        send(htmlMessage(toEmail, ACTIVATION_SUBJECT, activationTemplate.render(userName, activationLink)));
+        logger.info("✅ Activation email sent successfully to: {}", toEmail);
     }
     
-    private String buildOtpEmailContent(String otpCode) {
-        return "<!DOCTYPE html>" +
-               "<html>" +
-               "<head>" +
-               "    <meta charset=\"UTF-8\">" +
-               "    <style>" +
-               "        body { font-family: Arial, sans-serif; line-height: 1.6; color: #333; }" +
-               "        .container { max-width: 600px; margin: 0 auto; padding: 20px; }" +
-               "        .header { background: linear-gradient(135deg, #667eea 0%, #764ba2 100%); color: white; padding: 30px; text-align: center; border-radius: 10px 10px 0 0; }" +
-               "        .content { background: #f9f9f9; padding: 30px; border-radius: 0 0 10px 10px; }" +
-               "        .otp-code { font-size: 32px; font-weight: bold; text-align: center; color: #667eea; margin: 20px 0; padding: 15px; background: white; border-radius: 5px; letter-spacing: 5px; }" +
-               "        .footer { text-align: center; margin-top: 20px; font-size: 12px; color: #666; }" +
-               "    </style>" +
-               "</head>" +
-               "<body>" +
-               "    <div class=\"container\">" +
-               "        <div class=\"header\">" +
-               "            <h1>Kcoders</h1>" +
-               "            <h2>Login Verification Code</h2>" +
-               "        </div>" +
-               "        <div class=\"content\">" +
-               "            <p>Hello,</p>" +
-               "            <p>Your verification code for Kcoders login is:</p>" +
-               "            <div class=\"otp-code\">" + otpCode + "</div>" +
-               "            <p>This code will expire in 10 minutes. If you didn't request this login, please ignore this email.</p>" +
-               "            <p>Best regards,<br>The Kcoders Team</p>" +
-               "        </div>" +
-               "        <div class=\"footer\">" +
-               "            <p>&copy; 2025 Kcoders. All rights reserved.</p>" +
-               "        </div>" +
-               "    </div>" +
-               "</body>" +
-               "</html>";
+    private void deliverOtpEmail(String toEmail, String otpCode) throws MessagingException {
+        logger.info("🎯 SENDING OTP EMAIL to: {}, OTP: {}", toEmail, otpCode);
+        
+        if (!isEmailConfigured()) {
+            logger.warn("📧 Email service not configured. OTP for {}: {}", toEmail, otpCode);
+            System.out.println("=== OTP EMAIL (DEVELOPMENT) ===");
+            System.out.println("To: " + toEmail);
+            System.out.println("OTP Code: " + otpCode);
+            System.out.println("Use this OTP to login: " + otpCode);
+            System.out.println("===============================");
+            return;
+        }
+        
+        send(htmlMessage(toEmail, OTP_SUBJECT, otpTemplate.render(otpCode)));
+        logger.info("✅ OTP email sent successfully to: {}", toEmail);
     }
-
-    // Other email methods (password reset, etc.)
-    @Async
-    public void sendPasswordResetEmail(String toEmail, String otpCode) {
+    
+    private void deliverPasswordResetEmail(String toEmail, String otpCode) throws MessagingException {
         logger.info("🎯 SENDING PASSWORD RESET EMAIL to: {}, OTP: {}", toEmail, otpCode);
         
         if (!isEmailConfigured()) {
@@ -196,53 +177,39 @@ public class EmailService {
             return;
         }
         
+        send(htmlMessage(toEmail, PASSWORD_RESET_SUBJECT, passwordResetTemplate.render(otpCode)));
+        logger.info("✅ Password reset email sent successfully to: {}", toEmail);
+    }
+    
+    // Single-part HTML message; only the recipient and the rendered body vary per send
+    private MimeMessage htmlMessage(String toEmail, String encodedSubject, String html) throws MessagingException {
+        MimeMessage message = mailSender.createMimeMessage();
+        message.setRecipient(Message.RecipientType.TO, new InternetAddress(toEmail, true));
+        message.setHeader("Subject", encodedSubject);
+        message.setText(html, CHARSET, "html");
+        return message;
+    }
+    
+    private static String encodeSubject(String subject) {
         try {
-            MimeMessage message = mailSender.createMimeMessage();
-            MimeMessageHelper helper = new MimeMessageHelper(message, true, "UTF-8");
-            
-            helper.setTo(toEmail);
-            helper.setSubject("Kcoders - Password Reset Verification Code");
-            helper.setText(buildPasswordResetEmailContent(otpCode), true);
-            
-            mailSender.send(message);
-            logger.info("✅ Password reset email sent successfully to: {}", toEmail);
-        } catch (MessagingException e) {
-            logger.error("❌ Failed to send password reset email to: {}", toEmail, e);
+            return MimeUtility.fold(9, MimeUtility.encodeText(subject, CHARSET, null));
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("UTF-8 is not supported", e);
         }
     }
     
-    private String buildPasswordResetEmailContent(String otpCode) {
-        return "<!DOCTYPE html>" +
-               "<html>" +
-               "<head>" +
-               "    <meta charset=\"UTF-8\">" +
-               "    <style>" +
-               "        body { font-family: Arial, sans-serif; line-height: 1.6; color: #333; }" +
-               "        .container { max-width: 600px; margin: 0 auto; padding: 20px; }" +
-               "        .header { background: linear-gradient(135deg, #667eea 0%, #764ba2 100%); color: white; padding: 30px; text-align: center; border-radius: 10px 10px 0 0; }" +
-               "        .content { background: #f9f9f9; padding: 30px; border-radius: 0 0 10px 10px; }" +
-               "        .otp-code { font-size: 32px; font-weight: bold; text-align: center; color: #667eea; margin: 20px 0; padding: 15px; background: white; border-radius: 5px; letter-spacing: 5px; }" +
-               "        .footer { text-align: center; margin-top: 20px; font-size: 12px; color: #666; }" +
-               "    </style>" +
-               "</head>" +
-               "<body>" +
-               "    <div class=\"container\">" +
-               "        <div class=\"header\">" +
-               "            <h1>Kcoders</h1>" +
-               "            <h2>Password Reset Request</h2>" +
-               "        </div>" +
-               "        <div class=\"content\">" +
-               "            <p>Hello,</p>" +
-               "            <p>You have requested to reset your password for your Kcoders account. Use the verification code below to proceed:</p>" +
-               "            <div class=\"otp-code\">" + otpCode + "</div>" +
-               "            <p>This code will expire in 10 minutes. If you didn't request this reset, please ignore this email.</p>" +
-               "            <p>Best regards,<br>The Kcoders Team</p>" +
-               "        </div>" +
-               "        <div class=\"footer\">" +
-               "            <p>&copy; 2025 Kcoders. All rights reserved.</p>" +
-               "        </div>" +
-               "    </div>" +
-               "</body>" +
-               "</html>";
+    // Every SMTP call goes through the circuit breaker so a sick relay fails fast
+    private void send(MimeMessage message) throws MessagingException {
+        if (!circuitBreaker.tryAcquirePermission()) {
+            throw new EmailCircuitOpenException(circuitBreaker.getRemainingOpenMs());
+        }
+        long start = System.currentTimeMillis();
+        try {
+            transportPool.send(message);
+            circuitBreaker.onSuccess(System.currentTimeMillis() - start);
+        } catch (MessagingException | RuntimeException e) {
+            circuitBreaker.onError(System.currentTimeMillis() - start);
+            throw e;
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,94 @@
+// EmailTemplate.java - Email body parsed once into static segments and placeholders
+package com.paymentgateway.service;
+
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public final class EmailTemplate {
+
+    private static final String OPEN = "{{";
+    private static final String CLOSE = "}}";
+
+    private final String name;
+    // segments[i] is written before slots[i]; the last segment has no slot after it
+    private final String[] segments;
+    private final int[] slots;
+    private final int parameterCount;
+
+    private EmailTemplate(String name, String[] segments, int[] slots, int parameterCount) {
+        this.name = name;
+        this.segments = segments;
+        this.slots = slots;
+        this.parameterCount = parameterCount;
+    }
+
+    // Loads a template from the classpath, e.g. "email-templates/otp.html"
+    public static EmailTemplate load(String path, String... parameters) {
+        ClassPathResource resource = new ClassPathResource(path);
+        try (InputStream in = resource.getInputStream()) {
+            return compile(path, new String(in.readAllBytes(), StandardCharsets.UTF_8), parameters);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot load email template " + path, e);
+        }
+    }
+
+    // Splits "...{{name}}..." into static chunks; parameters fixes the render() argument order
+    public static EmailTemplate compile(String name, String text, String... parameters) {
+        List<String> segments = new ArrayList<>();
+        List<Integer> slots = new ArrayList<>();
+        int pos = 0;
+        while (true) {
+            int open = text.indexOf(OPEN, pos);
+            if (open < 0) {
+                break;
+            }
+            int close = text.indexOf(CLOSE, open + OPEN.length());
+            if (close < 0) {
+                throw new IllegalArgumentException("Unclosed placeholder in template " + name);
+            }
+            String placeholder = text.substring(open + OPEN.length(), close).trim();
+            int index = Arrays.asList(parameters).indexOf(placeholder);
+            if (index < 0) {
+                throw new IllegalArgumentException("Unknown placeholder {{" + placeholder + "}} in template " + name);
+            }
+            segments.add(text.substring(pos, open));
+            slots.add(index);
+            pos = close + CLOSE.length();
+        }
+        segments.add(text.substring(pos));
+
+        return new EmailTemplate(name,
+                segments.toArray(new String[0]),
+                slots.stream().mapToInt(Integer::intValue).toArray(),
+                parameters.length);
+    }
+
+    // Values are given in the order the parameters were declared
+    public String render(String... values) {
+        if (values.length != parameterCount) {
+            throw new IllegalArgumentException("Template " + name + " expects " + parameterCount
+                    + " values but got " + values.length);
+        }
+
+        // String.join sizes and fills the result in one pass, without the extra copy a
+        // StringBuilder's toString() makes
+        String[] parts = new String[segments.length + slots.length];
+        for (int i = 0; i < slots.length; i++) {
+            parts[2 * i] = segments[i];
+            parts[2 * i + 1] = String.valueOf(values[slots[i]]);
+        }
+        parts[parts.length - 1] = segments[segments.length - 1];
+        return String.join("", parts);
+    }
+
+    public String getName() {
+        return name;
+    }
+}
@@ -0,0 +1,291 @@
+// ExpiringOtpStore.java - Bounded in-memory OTP store that forgets codes nobody used
+package com.paymentgateway.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Entries are packed into one long: (issuedAtMillis << 20) | code.
+// A six-digit code fits in 20 bits and epoch millis in the remaining 43,
+// so an entry costs a key reference and a long in the table, plus the same
+// again in the expiry ring - a few dozen bytes instead of OtpData + String + map node.
+@Component
+@ConditionalOnProperty(name = "app.otp.store.type", havingValue = "memory", matchIfMissing = true)
+public class ExpiringOtpStore implements OtpStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExpiringOtpStore.class);
+
+    public static final long ABSENT = -1L;
+
+    private static final int CODE_BITS = 20;
+    private static final long CODE_MASK = (1L << CODE_BITS) - 1;
+    private static final int SEGMENT_BITS = 5;
+    private static final int SEGMENTS = 1 << SEGMENT_BITS;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final AtomicInteger totalEntries = new AtomicInteger();
+    private final Counter expiredEvictions;
+    private final Counter capacityEvictions;
+
+    public ExpiringOtpStore(@Value("${app.otp.store.max-entries:100000}") int maxEntries,
+                            MeterRegistry meterRegistry) {
+        int perSegment = Math.max(1, (maxEntries + SEGMENTS - 1) / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(perSegment);
+        }
+        Gauge.builder("otp.store.entries", totalEntries, AtomicInteger::get)
+                .description("Pending OTPs held in memory")
+                .register(meterRegistry);
+        this.expiredEvictions = Counter.builder("otp.store.evictions")
+                .tag("reason", "expired")
+                .register(meterRegistry);
+        this.capacityEvictions = Counter.builder("otp.store.evictions")
+                .tag("reason", "capacity")
+                .register(meterRegistry);
+    }
+
+    public static long pack(int code, long issuedAt) {
+        return issuedAt << CODE_BITS | (code & CODE_MASK);
+    }
+
+    public static int code(long entry) {
+        return (int) (entry & CODE_MASK);
+    }
+
+    public static long issuedAt(long entry) {
+        return entry >>> CODE_BITS;
+    }
+
+    @Override
+    public void put(String email, int code, long issuedAt) {
+        int hash = hash(email);
+        segmentFor(hash).put(email, hash, pack(code, issuedAt));
+    }
+
+    @Override
+    public long get(String email) {
+        int hash = hash(email);
+        return segmentFor(hash).get(email, hash);
+    }
+
+    @Override
+    public Result consume(String email, int code) {
+        long entry = get(email);
+        if (entry == ABSENT) {
+            return Result.NOT_FOUND;
+        }
+        if (System.currentTimeMillis() - issuedAt(entry) > OtpService.OTP_VALIDITY_DURATION) {
+            remove(email, entry);
+            return Result.EXPIRED;
+        }
+        if (code(entry) != code) {
+            return Result.INVALID;
+        }
+        // Conditional remove: a concurrent request can't consume the same code twice
+        return remove(email, entry) ? Result.VALID : Result.INVALID;
+    }
+
+    @Override
+    public void remove(String email) {
+        int hash = hash(email);
+        segmentFor(hash).remove(email, hash, ABSENT);
+    }
+
+    // Removes only if the stored entry is still the one the caller looked at
+    public boolean remove(String email, long expected) {
+        int hash = hash(email);
+        return segmentFor(hash).remove(email, hash, expected);
+    }
+
+    @Override
+    public int size() {
+        return totalEntries.get();
+    }
+
+    // Pops expired entries off each ring head; each entry is visited once, so expiry is amortised O(1)
+    @Scheduled(fixedDelayString = "${app.otp.store.sweep-interval-ms:1000}")
+    public void sweep() {
+        long expiredBefore = System.currentTimeMillis() - OtpService.OTP_VALIDITY_DURATION;
+        int removed = 0;
+        for (Segment segment : segments) {
+            removed += segment.expire(expiredBefore);
+        }
+        if (removed > 0) {
+            logger.debug("🧹 Swept {} expired OTPs, {} still pending", removed, totalEntries.get());
+        }
+    }
+
+    private Segment segmentFor(int hash) {
+        return segments[hash >>> (32 - SEGMENT_BITS)];
+    }
+
+    private static int hash(String key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    // Open-addressing table (linear probing, backward-shift delete) plus a FIFO ring in
+    // insertion order. Every OTP has the same lifetime, so the ring head is always the
+    // next entry to expire. Each segment is guarded by its own monitor.
+    private final class Segment {
+        private final int maxEntries;
+        private String[] keys = new String[INITIAL_CAPACITY];
+        private long[] values = new long[INITIAL_CAPACITY];
+        private int size;
+
+        // The ring can also hold superseded entries, hence twice the entry cap
+        private final int maxRing;
+        private String[] ringKeys = new String[INITIAL_CAPACITY];
+        private long[] ringValues = new long[INITIAL_CAPACITY];
+        private int ringHead;
+        private int ringSize;
+
+        Segment(int maxEntries) {
+            this.maxEntries = maxEntries;
+            this.maxRing = 2 * maxEntries;
+        }
+
+        synchronized long get(String key, int hash) {
+            int mask = keys.length - 1;
+            for (int i = hash & mask; keys[i] != null; i = (i + 1) & mask) {
+                if (keys[i].equals(key)) {
+                    return values[i];
+                }
+            }
+            return ABSENT;
+        }
+
+        synchronized void put(String key, int hash, long value) {
+            if (ringSize >= maxRing) {
+                evictRingHead(capacityEvictions);
+            }
+            if ((size + 1) * 4 > keys.length * 3) {
+                resizeTable(keys.length * 2);
+            }
+            int mask = keys.length - 1;
+            int i = hash & mask;
+            while (keys[i] != null && !keys[i].equals(key)) {
+                i = (i + 1) & mask;
+            }
+            if (keys[i] == null) {
+                keys[i] = key;
+                size++;
+                totalEntries.incrementAndGet();
+            }
+            values[i] = value;
+            pushRing(key, value);
+
+            // Over the cap: drop the oldest codes early rather than grow without bound
+            while (size > maxEntries && ringSize > 0) {
+                evictRingHead(capacityEvictions);
+            }
+        }
+
+        synchronized boolean remove(String key, int hash, long expected) {
+            int mask = keys.length - 1;
+            for (int i = hash & mask; keys[i] != null; i = (i + 1) & mask) {
+                if (keys[i].equals(key)) {
+                    if (expected != ABSENT && values[i] != expected) {
+                        return false;
+                    }
+                    deleteSlot(i);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        synchronized int expire(long expiredBefore) {
+            int removed = 0;
+            while (ringSize > 0 && issuedAt(ringValues[ringHead]) < expiredBefore) {
+                if (evictRingHead(expiredEvictions)) {
+                    removed++;
+                }
+            }
+            return removed;
+        }
+
+        // Drops the oldest ring entry; removes it from the table only if not superseded since
+        private boolean evictRingHead(Counter reason) {
+            String key = ringKeys[ringHead];
+            long value = ringValues[ringHead];
+            ringKeys[ringHead] = null;
+            ringHead = (ringHead + 1) & (ringKeys.length - 1);
+            ringSize--;
+            if (remove(key, hash(key), value)) {
+                reason.increment();
+                return true;
+            }
+            return false;
+        }
+
+        private void pushRing(String key, long value) {
+            if (ringSize == ringKeys.length) {
+                resizeRing(ringKeys.length * 2);
+            }
+            int tail = (ringHead + ringSize) & (ringKeys.length - 1);
+            ringKeys[tail] = key;
+            ringValues[tail] = value;
+            ringSize++;
+        }
+
+        private void deleteSlot(int slot) {
+            int mask = keys.length - 1;
+            keys[slot] = null;
+            size--;
+            totalEntries.decrementAndGet();
+            // Shift back any following entry whose probe chain passed through the hole
+            int hole = slot;
+            for (int i = (slot + 1) & mask; keys[i] != null; i = (i + 1) & mask) {
+                int home = hash(keys[i]) & mask;
+                boolean movable = hole <= i ? (home <= hole || home > i) : (home <= hole && home > i);
+                if (movable) {
+                    keys[hole] = keys[i];
+                    values[hole] = values[i];
+                    keys[i] = null;
+                    hole = i;
+                }
+            }
+        }
+
+        private void resizeTable(int capacity) {
+            String[] oldKeys = keys;
+            long[] oldValues = values;
+            keys = new String[capacity];
+            values = new long[capacity];
+            int mask = capacity - 1;
+            for (int j = 0; j < oldKeys.length; j++) {
+                if (oldKeys[j] != null) {
+                    int i = hash(oldKeys[j]) & mask;
+                    while (keys[i] != null) {
+                        i = (i + 1) & mask;
+                    }
+                    keys[i] = oldKeys[j];
+                    values[i] = oldValues[j];
+                }
+            }
+        }
+
+        private void resizeRing(int capacity) {
+            String[] newKeys = new String[capacity];
+            long[] newValues = new long[capacity];
+            int mask = ringKeys.length - 1;
+            for (int j = 0; j < ringSize; j++) {
+                newKeys[j] = ringKeys[(ringHead + j) & mask];
+                newValues[j] = ringValues[(ringHead + j) & mask];
+            }
+            ringKeys = newKeys;
+            ringValues = newValues;
+            ringHead = 0;
+        }
+    }
+}
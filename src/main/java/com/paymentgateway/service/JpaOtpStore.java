@@ -0,0 +1,236 @@
+// JpaOtpStore.java - OTPs shared by every node through otp_tokens, with a local near-cache
+package com.paymentgateway.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.paymentgateway.repository.OtpTokenRepository;
+
+import jakarta.annotation.PreDestroy;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Writes land in the near-cache immediately and reach the table in coalesced batches,
+// so issuing an OTP never waits on the database. The table only ever holds OtpHasher
+// HMACs, so codes issued on another node cannot be read back; get() sees local codes only.
+//
+// A guess costs no database work when it can be settled against a code this node has not
+// flushed yet (which is newer than anything in the table). Otherwise it is one indexed
+// conditional UPDATE on the guess's HMAC, which also consumes the code at most once
+// cluster-wide; a wrong guess matches no row. How often that can happen per email and per
+// client is bounded by OtpAttemptLimiter, which runs before the store.
+@Component
+@ConditionalOnProperty(name = "app.otp.store.type", havingValue = "jpa")
+public class JpaOtpStore implements OtpStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(JpaOtpStore.class);
+
+    private static final String INSERT_SQL =
+            "INSERT INTO otp_tokens (otp, user_email, expires_at, used, created_at) VALUES (?, ?, ?, false, ?)";
+
+    // Per key and conditional: retires only the email's codes issued before this write, so a
+    // newer code flushed by another node in the meantime is left alone
+    private static final String SUPERSEDE_SQL =
+            "UPDATE otp_tokens SET used = true WHERE user_email = ? AND used = false AND created_at < ?";
+
+    // A pending change for one email: a new code, or a tombstone (entry == ABSENT) retiring
+    // every code issued before at
+    private record PendingWrite(long entry, long at) {
+        boolean isTombstone() {
+            return entry == ExpiringOtpStore.ABSENT;
+        }
+    }
+
+    private final OtpTokenRepository otpTokenRepository;
+    private final OtpHasher otpHasher;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ExpiringOtpStore nearCache;
+
+    // Latest unflushed write per email
+    private final Map<String, PendingWrite> pendingWrites = new ConcurrentHashMap<>();
+    // Writes taken by the flush in progress, until its transaction has committed
+    private final Map<String, PendingWrite> inFlight = new ConcurrentHashMap<>();
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    public JpaOtpStore(OtpTokenRepository otpTokenRepository,
+                       OtpHasher otpHasher,
+                       JdbcTemplate jdbcTemplate,
+                       PlatformTransactionManager transactionManager,
+                       MeterRegistry meterRegistry,
+                       @Value("${app.otp.store.near-cache-max-entries:10000}") int nearCacheMaxEntries) {
+        this.otpTokenRepository = otpTokenRepository;
+        this.otpHasher = otpHasher;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.nearCache = new ExpiringOtpStore(nearCacheMaxEntries, meterRegistry);
+    }
+
+    @Override
+    public void put(String email, int code, long issuedAt) {
+        long entry = ExpiringOtpStore.pack(code, issuedAt);
+        nearCache.put(email, code, issuedAt);
+        pendingWrites.put(email, new PendingWrite(entry, issuedAt));
+    }
+
+    // Codes issued on this node only; the table cannot give a code back
+    @Override
+    public long get(String email) {
+        long entry = nearCache.get(email);
+        if (entry != ExpiringOtpStore.ABSENT) {
+            return entry;
+        }
+        PendingWrite pending = pendingWrites.get(email);
+        return pending != null ? pending.entry() : ExpiringOtpStore.ABSENT;
+    }
+
+    @Override
+    public Result consume(String email, int code) {
+        long entry = nearCache.get(email);
+        if (entry != ExpiringOtpStore.ABSENT) {
+            if (System.currentTimeMillis() - ExpiringOtpStore.issuedAt(entry) > OtpService.OTP_VALIDITY_DURATION) {
+                remove(email);
+                return Result.EXPIRED;
+            }
+            boolean unflushed = isUnflushed(email, entry);
+            if (ExpiringOtpStore.code(entry) != code) {
+                // The local code is newer than anything in the table, so the guess is wrong
+                return unflushed ? Result.INVALID : consumeFromDatabase(email, code);
+            }
+            if (!nearCache.remove(email, entry)) {
+                return Result.INVALID;
+            }
+            // Never flushed: nobody else can have seen it, so a tombstone in its place is enough
+            PendingWrite pending = pendingWrites.get(email);
+            PendingWrite tombstone = new PendingWrite(ExpiringOtpStore.ABSENT, System.currentTimeMillis());
+            if (pending != null && pending.entry() == entry && pendingWrites.replace(email, pending, tombstone)) {
+                return Result.VALID;
+            }
+        }
+        return consumeFromDatabase(email, code);
+    }
+
+    private Result consumeFromDatabase(String email, int code) {
+        // A code taken by the running flush is not committed yet; wait for it rather than miss it
+        if (inFlight.containsKey(email)) {
+            flushLock.lock();
+            flushLock.unlock();
+        }
+        String otp = OtpGenerator.format(code);
+        int updated = otpTokenRepository.markUsedByEmailAndOtp(email, otpHasher.hash(email, otp), LocalDateTime.now());
+        if (updated > 0) {
+            nearCache.remove(email);
+            return Result.VALID;
+        }
+        // Missing, expired, used and wrong all look the same from here
+        return Result.INVALID;
+    }
+
+    private boolean isUnflushed(String email, long entry) {
+        PendingWrite pending = pendingWrites.get(email);
+        if (pending != null && pending.entry() == entry) {
+            return true;
+        }
+        PendingWrite flushing = inFlight.get(email);
+        return flushing != null && flushing.entry() == entry;
+    }
+
+    @Override
+    public void remove(String email) {
+        nearCache.remove(email);
+        pendingWrites.put(email, new PendingWrite(ExpiringOtpStore.ABSENT, System.currentTimeMillis()));
+    }
+
+    @Override
+    public int size() {
+        return nearCache.size();
+    }
+
+    @Scheduled(fixedDelayString = "${app.otp.store.sweep-interval-ms:1000}")
+    public void sweepNearCache() {
+        nearCache.sweep();
+    }
+
+    // Two batched statements per flush, however many OTPs were issued since the last one.
+    // Nothing is deleted: superseded and consumed rows are marked used and left to ExpiredTokenReaper.
+    @Scheduled(fixedDelayString = "${app.otp.store.write-behind-ms:250}")
+    public void flush() {
+        if (pendingWrites.isEmpty()) {
+            return;
+        }
+        flushLock.lock();
+        try {
+            Map<String, PendingWrite> drained = new LinkedHashMap<>();
+            for (String email : pendingWrites.keySet()) {
+                PendingWrite write = pendingWrites.get(email);
+                if (write == null) {
+                    continue;
+                }
+                // Visible in inFlight before it leaves pendingWrites, so consume() always sees it in one of them
+                inFlight.put(email, write);
+                if (pendingWrites.remove(email, write)) {
+                    drained.put(email, write);
+                } else {
+                    inFlight.remove(email, write);
+                }
+            }
+            if (drained.isEmpty()) {
+                return;
+            }
+
+            List<Object[]> supersedes = new ArrayList<>(drained.size());
+            List<Object[]> inserts = new ArrayList<>();
+            drained.forEach((email, write) -> {
+                // A tombstone also retires a code issued in the same millisecond as it
+                supersedes.add(new Object[] {email, new Timestamp(write.isTombstone() ? write.at() + 1 : write.at())});
+                if (!write.isTombstone()) {
+                    long issuedAt = ExpiringOtpStore.issuedAt(write.entry());
+                    inserts.add(new Object[] {
+                            otpHasher.hash(email, OtpGenerator.format(ExpiringOtpStore.code(write.entry()))),
+                            email,
+                            new Timestamp(issuedAt + OtpService.OTP_VALIDITY_DURATION),
+                            new Timestamp(issuedAt)
+                    });
+                }
+            });
+
+            try {
+                transactionTemplate.executeWithoutResult(status -> {
+                    jdbcTemplate.batchUpdate(SUPERSEDE_SQL, supersedes);
+                    if (!inserts.isEmpty()) {
+                        jdbcTemplate.batchUpdate(INSERT_SQL, inserts);
+                    }
+                });
+                logger.debug("💾 Flushed {} OTP writes ({} issued)", drained.size(), inserts.size());
+            } catch (RuntimeException e) {
+                // Put them back unless a newer write for the same email arrived meanwhile
+                drained.forEach(pendingWrites::putIfAbsent);
+                logger.warn("⚠️ OTP write-behind flush failed, {} writes re-queued: {}", drained.size(), e.getMessage());
+            } finally {
+                drained.forEach(inFlight::remove);
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+}
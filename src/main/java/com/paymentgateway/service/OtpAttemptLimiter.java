@@ -0,0 +1,263 @@
+// OtpAttemptLimiter.java - Caps OTP guesses per email and per client IP before any DB or hash work
+package com.paymentgateway.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.security.SecureRandom;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Failures are counted in a fixed number of striped slots, so memory does not grow with the
+// number of emails or IPs an attacker cycles through. Each key maps to two slots (count-min):
+// a collision can only over-count, and the smaller of the two is used.
+//
+// A slot packs [window index : 40 | current count : 12 | previous count : 12] into one long
+// and is updated with CAS. The sliding-window estimate weights the previous window by how
+// much of it still overlaps the last windowMs.
+//
+// Every guess reserves an attempt up front (tryAcquire) and the reservation is only handed
+// back when the code turns out to be right (recordSuccess). A burst of concurrent guesses
+// therefore counts in full before any of them is checked, and a success refunds just its own
+// attempt: it never clears a slot, which other keys may share.
+@Component
+public class OtpAttemptLimiter {
+
+    private static final Logger logger = LoggerFactory.getLogger(OtpAttemptLimiter.class);
+
+    private static final int COUNT_BITS = 12;
+    private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+
+    private final Limit emailLimit;
+    private final Limit ipLimit;
+
+    public OtpAttemptLimiter(@Value("${app.otp.limiter.stripes:4096}") int stripes,
+                             @Value("${app.otp.limiter.window-ms:900000}") long windowMs,
+                             @Value("${app.otp.limiter.email.max-failures:5}") int emailMaxFailures,
+                             @Value("${app.otp.limiter.ip.max-failures:50}") int ipMaxFailures,
+                             @Value("${app.otp.limiter.lockout-ms:900000}") long lockoutMs,
+                             MeterRegistry meterRegistry) {
+        int size = Integer.highestOneBit(Math.max(64, stripes - 1)) << 1;
+        this.emailLimit = new Limit("email", size, windowMs, emailMaxFailures, lockoutMs, meterRegistry);
+        this.ipLimit = new Limit("ip", size, windowMs, ipMaxFailures, lockoutMs, meterRegistry);
+    }
+
+    // One reserved guess; see tryAcquire
+    public static final class Attempt {
+        private final String emailKey;
+        private final String clientIp;
+        private final long reservedAt;
+        private final long retryAfterMs;
+
+        private Attempt(String emailKey, String clientIp, long reservedAt, long retryAfterMs) {
+            this.emailKey = emailKey;
+            this.clientIp = clientIp;
+            this.reservedAt = reservedAt;
+            this.retryAfterMs = retryAfterMs;
+        }
+
+        public boolean isAllowed() {
+            return retryAfterMs == 0;
+        }
+
+        // Milliseconds until another guess is allowed; 0 when this one was
+        public long getRetryAfterMs() {
+            return retryAfterMs;
+        }
+    }
+
+    // Counts the guess against the email and the IP before it is checked. If either limit is
+    // reached nothing is counted and the attempt carries the wait instead.
+    public Attempt tryAcquire(String email, String clientIp) {
+        long now = System.currentTimeMillis();
+        String emailKey = email != null ? key(email) : null;
+        long wait = emailKey != null ? emailLimit.tryAcquire(emailKey, now) : 0;
+        if (wait > 0) {
+            return new Attempt(emailKey, clientIp, now, wait);
+        }
+        wait = clientIp != null ? ipLimit.tryAcquire(clientIp, now) : 0;
+        if (wait > 0) {
+            if (emailKey != null) {
+                emailLimit.release(emailKey, now);
+            }
+            return new Attempt(emailKey, clientIp, now, wait);
+        }
+        return new Attempt(emailKey, clientIp, now, 0);
+    }
+
+    // The reservation stands; locks the keys out if this guess used up their allowance
+    public void recordFailure(Attempt attempt) {
+        if (!attempt.isAllowed()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (attempt.emailKey != null) {
+            emailLimit.lockOutIfExhausted(attempt.emailKey, now);
+        }
+        if (attempt.clientIp != null) {
+            ipLimit.lockOutIfExhausted(attempt.clientIp, now);
+        }
+    }
+
+    // A correct code hands its own reservation back; earlier failures keep counting
+    public void recordSuccess(Attempt attempt) {
+        if (!attempt.isAllowed()) {
+            return;
+        }
+        if (attempt.emailKey != null) {
+            emailLimit.release(attempt.emailKey, attempt.reservedAt);
+        }
+        if (attempt.clientIp != null) {
+            ipLimit.release(attempt.clientIp, attempt.reservedAt);
+        }
+    }
+
+    private static String key(String email) {
+        return email.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static final class Limit {
+        private final String name;
+        private final int mask;
+        private final long windowMs;
+        private final int maxFailures;
+        private final long lockoutMs;
+        private final AtomicLongArray counters;
+        private final AtomicLongArray lockedUntil;
+        // Per-process seed so slot collisions can't be precomputed
+        private final long seed;
+        private final Counter rejections;
+        private final Counter lockouts;
+
+        Limit(String name, int size, long windowMs, int maxFailures, long lockoutMs, MeterRegistry meterRegistry) {
+            this.name = name;
+            this.mask = size - 1;
+            this.windowMs = Math.max(1, windowMs);
+            this.maxFailures = (int) Math.min(Math.max(1, maxFailures), COUNT_MASK);
+            this.lockoutMs = lockoutMs;
+            this.counters = new AtomicLongArray(size);
+            this.lockedUntil = new AtomicLongArray(size);
+            this.seed = new SecureRandom().nextLong();
+            this.rejections = Counter.builder("otp.limiter.rejections").tag("key", name).register(meterRegistry);
+            this.lockouts = Counter.builder("otp.limiter.lockouts").tag("key", name).register(meterRegistry);
+        }
+
+        // Increments both slots first and checks afterwards, so concurrent callers see each
+        // other's reservations; whoever lands over the limit takes its increment back
+        long tryAcquire(String key, long now) {
+            long h = hash(key);
+            int a = (int) h & mask;
+            int b = (int) (h >>> 32) & mask;
+            long until = Math.min(lockedUntil.get(a), lockedUntil.get(b));
+            if (until > now) {
+                rejections.increment();
+                return until - now;
+            }
+            increment(a, now);
+            increment(b, now);
+            if (Math.min(estimate(a, now), estimate(b, now)) > maxFailures) {
+                decrement(a, now);
+                decrement(b, now);
+                rejections.increment();
+                return windowMs - now % windowMs;
+            }
+            return 0;
+        }
+
+        void lockOutIfExhausted(String key, long now) {
+            long h = hash(key);
+            int a = (int) h & mask;
+            int b = (int) (h >>> 32) & mask;
+            if (Math.min(estimate(a, now), estimate(b, now)) >= maxFailures) {
+                long until = now + lockoutMs;
+                lockedUntil.accumulateAndGet(a, until, Math::max);
+                lockedUntil.accumulateAndGet(b, until, Math::max);
+                lockouts.increment();
+                logger.warn("🔒 OTP attempts locked out for {} for {} ms", name, lockoutMs);
+            }
+        }
+
+        // Takes back one attempt reserved at reservedAt
+        void release(String key, long reservedAt) {
+            long h = hash(key);
+            decrement((int) h & mask, reservedAt);
+            decrement((int) (h >>> 32) & mask, reservedAt);
+        }
+
+        private void increment(int slot, long now) {
+            long window = now / windowMs;
+            long current;
+            long next;
+            do {
+                current = counters.get(slot);
+                long slotWindow = current >>> (2 * COUNT_BITS);
+                long cur = (current >>> COUNT_BITS) & COUNT_MASK;
+                long prev = current & COUNT_MASK;
+                if (slotWindow == window) {
+                    cur = Math.min(cur + 1, COUNT_MASK);
+                } else if (slotWindow == window - 1) {
+                    prev = cur;
+                    cur = 1;
+                } else {
+                    prev = 0;
+                    cur = 1;
+                }
+                next = window << (2 * COUNT_BITS) | cur << COUNT_BITS | prev;
+            } while (!counters.compareAndSet(slot, current, next));
+        }
+
+        // Undoes one increment made at time at, in whichever field its window now lives;
+        // nothing to undo once that window has aged out
+        private void decrement(int slot, long at) {
+            long window = at / windowMs;
+            long current;
+            long next;
+            do {
+                current = counters.get(slot);
+                long slotWindow = current >>> (2 * COUNT_BITS);
+                long cur = (current >>> COUNT_BITS) & COUNT_MASK;
+                long prev = current & COUNT_MASK;
+                if (slotWindow == window && cur > 0) {
+                    cur--;
+                } else if (slotWindow == window + 1 && prev > 0) {
+                    prev--;
+                } else {
+                    return;
+                }
+                next = slotWindow << (2 * COUNT_BITS) | cur << COUNT_BITS | prev;
+            } while (!counters.compareAndSet(slot, current, next));
+        }
+
+        private double estimate(int slot, long now) {
+            long value = counters.get(slot);
+            long window = now / windowMs;
+            long slotWindow = value >>> (2 * COUNT_BITS);
+            long cur = (value >>> COUNT_BITS) & COUNT_MASK;
+            long prev = value & COUNT_MASK;
+            double overlap = 1.0 - (double) (now % windowMs) / windowMs;
+            if (slotWindow == window) {
+                return cur + prev * overlap;
+            }
+            if (slotWindow == window - 1) {
+                return cur * overlap;
+            }
+            return 0;
+        }
+
+        // Seeded FNV-1a over the chars; unlike String.hashCode, colliding keys can't be crafted offline
+        private long hash(String key) {
+            long h = seed;
+            for (int i = 0; i < key.length(); i++) {
+                h ^= key.charAt(i);
+                h *= 0x100000001B3L;
+            }
+            h ^= h >>> 33;
+            h *= 0xFF51AFD7ED558CCDL;
+            return h ^ (h >>> 33);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+// OtpGenerator.java - Six-digit codes from a strong source, without shared state between threads
+package com.paymentgateway.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+
+@Component
+public class OtpGenerator {
+
+    public static final int OTP_LENGTH = 6;
+    private static final int OTP_RANGE = 1_000_000;
+    // Largest multiple of OTP_RANGE below 2^24; values above it are rejected to avoid modulo bias
+    private static final int ACCEPT_LIMIT = (1 << 24) / OTP_RANGE * OTP_RANGE;
+
+    private final int bufferSize;
+
+    // Each thread owns its generator and buffer, so no CAS or lock is shared across request threads
+    private final ThreadLocal<CodeBuffer> buffers;
+
+    public OtpGenerator(@Value("${app.otp.generator.buffer-size:64}") int bufferSize) {
+        this.bufferSize = Math.max(1, bufferSize);
+        this.buffers = ThreadLocal.withInitial(() -> new CodeBuffer(this.bufferSize));
+    }
+
+    private static final class CodeBuffer {
+        final SecureRandom random = newSecureRandom();
+        final int[] codes;
+        // Three random bytes per candidate, with headroom for rejected candidates
+        final byte[] entropy;
+        int next;
+
+        CodeBuffer(int size) {
+            codes = new int[size];
+            entropy = new byte[size * 4];
+            next = size; // empty, filled on first use
+        }
+
+        int take() {
+            if (next == codes.length) {
+                refill();
+            }
+            return codes[next++];
+        }
+
+        // One bulk nextBytes() call yields a whole buffer of codes
+        private void refill() {
+            int filled = 0;
+            while (filled < codes.length) {
+                random.nextBytes(entropy);
+                for (int i = 0; i + 2 < entropy.length && filled < codes.length; i += 3) {
+                    int candidate = (entropy[i] & 0xFF) << 16 | (entropy[i + 1] & 0xFF) << 8 | (entropy[i + 2] & 0xFF);
+                    if (candidate < ACCEPT_LIMIT) {
+                        codes[filled++] = candidate % OTP_RANGE;
+                    }
+                }
+            }
+            next = 0;
+        }
+    }
+
+    private static SecureRandom newSecureRandom() {
+        try {
+            // DRBG is per-instance and does not funnel through the shared NativePRNG lock
+            return SecureRandom.getInstance("DRBG");
+        } catch (NoSuchAlgorithmException e) {
+            return new SecureRandom();
+        }
+    }
+
+    // Uniform in [0, 999999]
+    public int nextCode() {
+        return buffers.get().take();
+    }
+
+    public String nextOtp() {
+        return format(nextCode());
+    }
+
+    // Zero-padded to six digits without going through java.util.Formatter
+    public static String format(int code) {
+        char[] digits = new char[OTP_LENGTH];
+        for (int i = OTP_LENGTH - 1; i >= 0; i--) {
+            digits[i] = (char) ('0' + code % 10);
+            code /= 10;
+        }
+        return new String(digits);
+    }
+}
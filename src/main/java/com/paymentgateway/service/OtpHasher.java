@@ -0,0 +1,97 @@
+// OtpHasher.java - Keyed HMAC for stored OTPs; a short-lived code does not need a slow KDF
+package com.paymentgateway.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+// Stored form: "{hmac}" + base64url(HMAC-SHA256(secret, email + '\0' + otp)).
+// Binding the email means a hash copied onto another row never verifies.
+// Rows written before this change hold BCrypt hashes ("$2a$..."); those are still
+// checked with the PasswordEncoder until they expire or are consumed.
+@Component
+public class OtpHasher {
+
+    private static final Logger logger = LoggerFactory.getLogger(OtpHasher.class);
+
+    static final String PREFIX = "{hmac}";
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private final SecretKeySpec key;
+    private final PasswordEncoder legacyEncoder;
+
+    // Mac instances are not thread-safe and init() is not free, so each thread keeps one
+    private final ThreadLocal<Mac> macs;
+
+    public OtpHasher(@Value("${app.otp.hmac-secret:}") String secret, PasswordEncoder passwordEncoder) {
+        byte[] keyBytes;
+        if (secret == null || secret.isBlank()) {
+            keyBytes = new byte[32];
+            new SecureRandom().nextBytes(keyBytes);
+            logger.warn("⚠️ app.otp.hmac-secret is not set - using a random per-process key. " +
+                    "Stored OTPs will not verify on other nodes or after a restart.");
+        } else {
+            keyBytes = secret.getBytes(StandardCharsets.UTF_8);
+        }
+        this.key = new SecretKeySpec(keyBytes, ALGORITHM);
+        this.legacyEncoder = passwordEncoder;
+        this.macs = ThreadLocal.withInitial(this::newMac);
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 is not available", e);
+        }
+    }
+
+    public String hash(String email, String otp) {
+        return PREFIX + Base64.getUrlEncoder().withoutPadding().encodeToString(digest(email, otp));
+    }
+
+    public boolean matches(String email, String otp, String stored) {
+        if (otp == null || stored == null) {
+            return false;
+        }
+        if (stored.startsWith(PREFIX)) {
+            byte[] expected;
+            try {
+                expected = Base64.getUrlDecoder().decode(stored.substring(PREFIX.length()));
+            } catch (IllegalArgumentException e) {
+                return false;
+            }
+            // Constant time: a mismatch position must not leak through timing
+            return MessageDigest.isEqual(digest(email, otp), expected);
+        }
+        if (isLegacy(stored)) {
+            return legacyEncoder.matches(otp, stored);
+        }
+        return false;
+    }
+
+    // BCrypt hash written before OTPs switched to HMAC
+    public boolean isLegacy(String stored) {
+        return stored != null && stored.startsWith("$2");
+    }
+
+    private byte[] digest(String email, String otp) {
+        Mac mac = macs.get();
+        mac.update(email.getBytes(StandardCharsets.UTF_8));
+        mac.update((byte) 0);
+        return mac.doFinal(otp.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -6,37 +6,23 @@ import org.springframework.stereotype.Service;
 import com.paymentgateway.entity.User;
 
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.Random;
 
 @Service
 public class OtpService {
     
-    private final Map<String, OtpData> otpStorage = new ConcurrentHashMap<>();
-    private final Random random = new Random();
-    private static final long OTP_VALIDITY_DURATION = 10 * 60 * 1000; // 10 minutes
+    // In-memory per node, or shared through otp_tokens (app.otp.store.type)
+    private final OtpStore otpStorage;
+    private final OtpGenerator otpGenerator;
+    static final long OTP_VALIDITY_DURATION = 10 * 60 * 1000; // 10 minutes
     
-    public static class OtpData {
-        private final String otp;
-        private final long timestamp;
-        private final String userEmail;
-        
-        public OtpData(String otp, long timestamp, String userEmail) {
-            this.otp = otp;
-            this.timestamp = timestamp;
-            this.userEmail = userEmail;
-        }
-        
-        public String getOtp() { return otp; }
-        public long getTimestamp() { return timestamp; }
-        public String getUserEmail() { return userEmail; }
+    public OtpService(OtpStore otpStorage, OtpGenerator otpGenerator) {
+        this.otpStorage = otpStorage;
+        this.otpGenerator = otpGenerator;
     }
     
     // Returns the OTP string directly
     public String generateOtp(User user) {
-        String otp = String.format("%06d", random.nextInt(999999));
-        OtpData otpData = new OtpData(otp, System.currentTimeMillis(), user.getEmail());
-        otpStorage.put(user.getEmail(), otpData);
+        String otp = storeNewOtp(user.getEmail());
         
         System.out.println("📧 OTP generated for " + user.getEmail() + ": " + otp);
         return otp; // Return the OTP string directly
@@ -44,9 +30,7 @@ public class OtpService {
     
     // NEW METHOD: Generate OTP and return it for testing (without email sending)
     public String generateOtpForTesting(User user) {
-        String otp = String.format("%06d", random.nextInt(999999));
-        OtpData otpData = new OtpData(otp, System.currentTimeMillis(), user.getEmail());
-        otpStorage.put(user.getEmail(), otpData);
+        String otp = storeNewOtp(user.getEmail());
         
         System.out.println("🎯 TEST OTP for " + user.getEmail() + ": " + otp);
         System.out.println("💡 Display this OTP to user for testing: " + otp);
@@ -56,9 +40,7 @@ public class OtpService {
     
     // NEW METHOD: Generate OTP with email simulation (for testing)
     public Map<String, String> generateOtpWithResponse(User user) {
-        String otp = String.format("%06d", random.nextInt(999999));
-        OtpData otpData = new OtpData(otp, System.currentTimeMillis(), user.getEmail());
-        otpStorage.put(user.getEmail(), otpData);
+        String otp = storeNewOtp(user.getEmail());
         
         System.out.println("🎯 OTP for " + user.getEmail() + ": " + otp);
         System.out.println("💡 FOR TESTING - Display this OTP to user: " + otp);
@@ -72,29 +54,27 @@ public class OtpService {
     }
     
     public boolean validateOtp(String email, String otp) {
-        OtpData otpData = otpStorage.get(email);
-        
-        if (otpData == null) {
-            System.out.println("❌ OTP validation failed: No OTP found for " + email);
+        int code = parseOtp(otp);
+        if (code < 0) {
+            System.out.println("❌ OTP validation failed: Invalid OTP for " + email);
             return false;
         }
         
-        // Check if OTP is expired
-        if (System.currentTimeMillis() - otpData.getTimestamp() > OTP_VALIDITY_DURATION) {
-            otpStorage.remove(email);
-            System.out.println("❌ OTP validation failed: OTP expired for " + email);
-            return false;
+        switch (otpStorage.consume(email, code)) {
+            case VALID:
+                System.out.println("✅ OTP validated successfully for " + email);
+                return true;
+            case NOT_FOUND:
+                System.out.println("❌ OTP validation failed: No OTP found for " + email);
+                return false;
+            case EXPIRED:
+                System.out.println("❌ OTP validation failed: OTP expired for " + email);
+                return false;
+            case INVALID:
+            default:
+                System.out.println("❌ OTP validation failed: Invalid OTP for " + email);
+                return false;
         }
-        
-        // Check if OTP matches
-        boolean isValid = otpData.getOtp().equals(otp);
-        if (isValid) {
-            otpStorage.remove(email);
-            System.out.println("✅ OTP validated successfully for " + email);
-        } else {
-            System.out.println("❌ OTP validation failed: Invalid OTP for " + email);
-        }
-        return isValid;
     }
     
     public void clearOtp(String email) {
@@ -103,32 +83,56 @@ public class OtpService {
     }
     
     public String getOtp(String email) {
-        OtpData otpData = otpStorage.get(email);
-        String otp = otpData != null ? otpData.getOtp() : null;
+        long entry = otpStorage.get(email);
+        String otp = entry != ExpiringOtpStore.ABSENT ? OtpGenerator.format(ExpiringOtpStore.code(entry)) : null;
         System.out.println("🔍 Retrieved OTP for " + email + ": " + otp);
         return otp;
     }
     
     // NEW METHOD: Check if OTP exists and is valid
     public Map<String, Object> getOtpStatus(String email) {
-        OtpData otpData = otpStorage.get(email);
+        long entry = otpStorage.get(email);
         
-        if (otpData == null) {
+        if (entry == ExpiringOtpStore.ABSENT) {
             return Map.of(
                 "exists", false,
                 "message", "No OTP found for this email"
             );
         }
         
-        boolean isExpired = System.currentTimeMillis() - otpData.getTimestamp() > OTP_VALIDITY_DURATION;
-        long timeLeft = OTP_VALIDITY_DURATION - (System.currentTimeMillis() - otpData.getTimestamp());
+        long issuedAt = ExpiringOtpStore.issuedAt(entry);
+        boolean isExpired = System.currentTimeMillis() - issuedAt > OTP_VALIDITY_DURATION;
+        long timeLeft = OTP_VALIDITY_DURATION - (System.currentTimeMillis() - issuedAt);
         
         return Map.of(
             "exists", true,
             "expired", isExpired,
             "timeLeftSeconds", timeLeft / 1000,
-            "otp", isExpired ? "EXPIRED" : otpData.getOtp(), // Only return OTP if not expired
+            "otp", isExpired ? "EXPIRED" : OtpGenerator.format(ExpiringOtpStore.code(entry)), // Only return OTP if not expired
             "message", isExpired ? "OTP has expired" : "OTP is active"
         );
     }
-}
\ No newline at end of file
+    
+    // Stores the code as a packed int and returns its six-digit form
+    private String storeNewOtp(String email) {
+        int code = otpGenerator.nextCode();
+        otpStorage.put(email, code, System.currentTimeMillis());
+        return OtpGenerator.format(code);
+    }
+    
+    // Exactly six ASCII digits, otherwise -1 (never matches a stored code)
+    private static int parseOtp(String otp) {
+        if (otp == null || otp.length() != OtpGenerator.OTP_LENGTH) {
+            return -1;
+        }
+        int code = 0;
+        for (int i = 0; i < otp.length(); i++) {
+            char c = otp.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            code = code * 10 + (c - '0');
+        }
+        return code;
+    }
+}
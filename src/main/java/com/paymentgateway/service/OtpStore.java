@@ -0,0 +1,26 @@
+// OtpStore.java - Where pending OTPs live; in-memory per node or shared through otp_tokens
+package com.paymentgateway.service;
+
+public interface OtpStore {
+
+    enum Result {
+        VALID,
+        INVALID,
+        EXPIRED,
+        NOT_FOUND
+    }
+
+    // Replaces any pending code for this email
+    void put(String email, int code, long issuedAt);
+
+    // Packed entry (see ExpiringOtpStore.pack), or ExpiringOtpStore.ABSENT
+    long get(String email);
+
+    // Checks the code and, if it matches, removes it so it cannot be used again
+    Result consume(String email, int code);
+
+    void remove(String email);
+
+    // Entries held on this node
+    int size();
+}
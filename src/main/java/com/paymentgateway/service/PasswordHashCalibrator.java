@@ -0,0 +1,47 @@
+// PasswordHashCalibrator.java - Picks the BCrypt cost that takes about the target time on this machine
+package com.paymentgateway.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.crypto.bcrypt.BCrypt;
+
+public final class PasswordHashCalibrator {
+
+    private static final Logger logger = LoggerFactory.getLogger(PasswordHashCalibrator.class);
+
+    private static final int SAMPLES = 3;
+
+    private PasswordHashCalibrator() {
+    }
+
+    // Times each cost from minCost upwards and returns the highest one that stays within
+    // targetMs. Every extra cost doubles the work, so it stops at the first level over budget.
+    public static int calibrate(long targetMs, int minCost, int maxCost) {
+        String sample = "calibration-" + System.nanoTime();
+        // Warm up the JIT so the first measured level isn't inflated
+        for (int i = 0; i < 5; i++) {
+            BCrypt.hashpw(sample, BCrypt.gensalt(4));
+        }
+
+        int chosen = minCost;
+        logger.info("🔐 Calibrating BCrypt cost for a target of {} ms per hash", targetMs);
+        for (int cost = minCost; cost <= maxCost; cost++) {
+            long bestNanos = Long.MAX_VALUE;
+            for (int i = 0; i < SAMPLES; i++) {
+                long start = System.nanoTime();
+                BCrypt.hashpw(sample, BCrypt.gensalt(cost));
+                bestNanos = Math.min(bestNanos, System.nanoTime() - start);
+            }
+            double millis = bestNanos / 1_000_000.0;
+            logger.info("🔐   cost {}: {} ms/hash, ~{} hashes/s per core",
+                    cost, String.format("%.1f", millis), String.format("%.1f", 1000.0 / millis));
+            if (millis > targetMs) {
+                break;
+            }
+            chosen = cost;
+        }
+        logger.info("🔐 Using BCrypt cost {} - pin it with app.security.hashing.bcrypt-strength " +
+                "so every node in the fleet agrees", chosen);
+        return chosen;
+    }
+}
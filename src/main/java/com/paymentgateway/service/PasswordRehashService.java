@@ -0,0 +1,41 @@
+// PasswordRehashService.java - Stores the re-encoded hash Spring Security produces after a successful login
+package com.paymentgateway.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.paymentgateway.entity.User;
+import com.paymentgateway.repository.UserRepository;
+
+// DaoAuthenticationProvider calls this when PasswordEncoder.upgradeEncoding() says the stored
+// hash was made with another cost or format. The raw password is only known at that moment,
+// so this is how hashes move to the current cost without a mass reset.
+@Service
+public class PasswordRehashService implements UserDetailsPasswordService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PasswordRehashService.class);
+
+    private final UserRepository userRepository;
+    private final UserCache userCache;
+
+    public PasswordRehashService(UserRepository userRepository, UserCache userCache) {
+        this.userRepository = userRepository;
+        this.userCache = userCache;
+    }
+
+    @Override
+    @Transactional
+    public UserDetails updatePassword(UserDetails userDetails, String newEncodedPassword) {
+        User user = userRepository.findByEmail(userDetails.getUsername())
+                .orElseThrow(() -> new IllegalStateException("User vanished during login: " + userDetails.getUsername()));
+        user.setPassword(newEncodedPassword);
+        User saved = userRepository.save(user);
+        userCache.invalidate(saved.getEmail());
+        logger.info("🔐 Password hash upgraded for {}", saved.getEmail());
+        return saved;
+    }
+}
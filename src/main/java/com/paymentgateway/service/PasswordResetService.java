@@ -2,17 +2,16 @@
 package com.paymentgateway.service;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import com.paymentgateway.dto.ResetTokenView;
+import com.paymentgateway.dto.UserAuthView;
 import com.paymentgateway.entity.PasswordResetToken;
 import com.paymentgateway.entity.User;
 import com.paymentgateway.repository.PasswordResetTokenRepository;
 
-import java.time.LocalDateTime;
 import java.util.Optional;
-import java.util.UUID;
 
 @Service
 @Transactional
@@ -24,6 +23,15 @@ public class PasswordResetService {
     @Autowired
     private UserService userService;
     
+    @Autowired
+    private EmailOutboxService emailOutboxService;
+    
+    @Autowired
+    private SignedTokenService signedTokenService;
+    
+    @Autowired
+    private TokenGenerator tokenGenerator;
+    
     public PasswordResetToken createPasswordResetToken(User user) {
         // Delete any existing tokens for this user
         tokenRepository.deleteByUser(user);
@@ -33,29 +41,54 @@ public class PasswordResetService {
         return tokenRepository.save(resetToken);
     }
     
-    public Optional<PasswordResetToken> validatePasswordResetToken(String token) {
-        Optional<PasswordResetToken> resetToken = tokenRepository.findByToken(token);
-        if (resetToken.isPresent() && resetToken.get().isValid()) {
-            return resetToken;
+    // Creates the token and queues its email in one transaction; the user row itself is never loaded.
+    // In stateless mode the token is signed instead of stored, so nothing is written but the email.
+    public String requestPasswordReset(UserAuthView user) {
+        String token;
+        if (signedTokenService.isEnabled()) {
+            token = signedTokenService.issue(SignedTokenService.Purpose.PASSWORD_RESET,
+                    user.id(), user.tokenVersion(), user.email());
+        } else {
+            token = createPasswordResetToken(userService.getReference(user.id())).getToken();
         }
-        return Optional.empty();
+        emailOutboxService.enqueuePasswordResetEmail(user.email(), token);
+        return token;
+    }
+    
+    public Optional<ResetTokenView> validatePasswordResetToken(String token) {
+        return tokenRepository.findViewByToken(token).filter(ResetTokenView::isValid);
     }
     
     public Optional<PasswordResetToken> getTokenByUserEmail(String email) {
         return tokenRepository.findByUserEmail(email);
     }
     
-    public void markTokenAsUsed(PasswordResetToken token) {
-        token.setUsed(true);
-        tokenRepository.save(token);
+    // False if another request used the token first
+    public boolean markTokenAsUsed(ResetTokenView token) {
+        return tokenRepository.markUsed(token.id()) == 1;
     }
     
-    private String generateToken() {
-        return UUID.randomUUID().toString().replace("-", "").substring(0, 8).toUpperCase();
+    // Burns the token and stores the new hash in one transaction; empty if the token was
+    // already used. The caller hashes the password first, so no connection is held while BCrypt runs.
+    public Optional<User> resetPassword(ResetTokenView token, String encodedPassword) {
+        if (!markTokenAsUsed(token)) {
+            return Optional.empty();
+        }
+        return userService.applyEncodedPassword(token.userId(), encodedPassword);
+    }
+    
+    // Signature, expiry and owner email checked in memory; no query
+    public Optional<SignedTokenService.Claims> validateSignedResetToken(String token, String email) {
+        return signedTokenService.verify(token, SignedTokenService.Purpose.PASSWORD_RESET, email);
     }
     
-    @Scheduled(cron = "0 0 2 * * ?") // Run daily at 2 AM
-    public void cleanupExpiredTokens() {
-        tokenRepository.deleteAllExpiredSince(LocalDateTime.now());
+    // Stores the hash only if the token's version is still current, and bumps it
+    public boolean resetPassword(SignedTokenService.Claims claims, String email, String encodedPassword) {
+        return userService.applyEncodedPasswordIfTokenVersion(claims.userId(), claims.tokenVersion(),
+                email, encodedPassword);
+    }
+    
+    private String generateToken() {
+        return tokenGenerator.resetCode();
     }
 }
\ No newline at end of file
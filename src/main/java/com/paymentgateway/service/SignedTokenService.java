@@ -0,0 +1,159 @@
+// SignedTokenService.java - Stateless HMAC-signed activation and password-reset tokens
+package com.paymentgateway.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.paymentgateway.util.EmailNormalizer;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Optional;
+
+// Token = base64url(payload || mac), 51 characters:
+//   payload: format(1) | purpose(1) | userId(8) | tokenVersion(4) | expiresAt epoch seconds(8)
+//   mac:     first 16 bytes of HMAC-SHA256(secret, payload || 0x00 || normalised email)
+// Verification is pure CPU: signature, purpose, expiry and the email the token was sent to.
+// The email is bound into the MAC rather than carried, so the token reveals nothing about it.
+// Single use comes from users.token_version: consuming a token is a conditional UPDATE on the
+// version it carries, which also bumps it and so revokes every other outstanding token.
+// Enabled with app.tokens.stateless.enabled; the stored tokens keep working either way.
+@Component
+public class SignedTokenService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SignedTokenService.class);
+
+    public enum Purpose {
+        ACTIVATION(1),
+        PASSWORD_RESET(2);
+
+        final byte code;
+
+        Purpose(int code) {
+            this.code = (byte) code;
+        }
+    }
+
+    public record Claims(Purpose purpose, long userId, int tokenVersion, Instant expiresAt) {
+    }
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final byte FORMAT = 1;
+    private static final int PAYLOAD_LENGTH = 22;
+    private static final int MAC_LENGTH = 16;
+    private static final int TOKEN_LENGTH = 51;
+
+    private final boolean enabled;
+    private final SecretKeySpec key;
+    private final Duration activationTtl;
+    private final Duration resetTtl;
+
+    // Mac instances are not thread-safe and init() is not free, so each thread keeps one
+    private final ThreadLocal<Mac> macs;
+
+    public SignedTokenService(@Value("${app.tokens.stateless.enabled:false}") boolean enabled,
+                              @Value("${app.tokens.signing-secret:}") String secret,
+                              @Value("${app.tokens.activation-ttl-minutes:1440}") long activationTtlMinutes,
+                              @Value("${app.tokens.reset-ttl-minutes:10}") long resetTtlMinutes) {
+        byte[] keyBytes;
+        if (secret == null || secret.isBlank()) {
+            keyBytes = new byte[32];
+            new SecureRandom().nextBytes(keyBytes);
+            if (enabled) {
+                logger.warn("⚠️ app.tokens.signing-secret is not set - using a random per-process key. " +
+                        "Signed tokens will not verify on other nodes or after a restart.");
+            }
+        } else {
+            keyBytes = secret.getBytes(StandardCharsets.UTF_8);
+        }
+        this.enabled = enabled;
+        this.key = new SecretKeySpec(keyBytes, ALGORITHM);
+        this.activationTtl = Duration.ofMinutes(activationTtlMinutes);
+        this.resetTtl = Duration.ofMinutes(resetTtlMinutes);
+        this.macs = ThreadLocal.withInitial(this::newMac);
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 is not available", e);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Tells signed tokens apart from the short stored codes, which are case-insensitive
+    public boolean isSignedToken(String token) {
+        return token != null && token.length() == TOKEN_LENGTH;
+    }
+
+    public String issue(Purpose purpose, long userId, int tokenVersion, String email) {
+        Duration ttl = purpose == Purpose.ACTIVATION ? activationTtl : resetTtl;
+        byte[] token = ByteBuffer.allocate(PAYLOAD_LENGTH + MAC_LENGTH)
+                .put(FORMAT)
+                .put(purpose.code)
+                .putLong(userId)
+                .putInt(tokenVersion)
+                .putLong(Instant.now().plus(ttl).getEpochSecond())
+                .array();
+        System.arraycopy(mac(token, email), 0, token, PAYLOAD_LENGTH, MAC_LENGTH);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(token);
+    }
+
+    // Empty for anything malformed, forged, expired, for another purpose or for another email
+    public Optional<Claims> verify(String token, Purpose expected, String email) {
+        if (!isSignedToken(token) || email == null) {
+            return Optional.empty();
+        }
+        byte[] raw;
+        try {
+            raw = Base64.getUrlDecoder().decode(token);
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+        if (raw.length != PAYLOAD_LENGTH + MAC_LENGTH) {
+            return Optional.empty();
+        }
+        byte[] presented = Arrays.copyOfRange(raw, PAYLOAD_LENGTH, raw.length);
+        if (!MessageDigest.isEqual(mac(raw, email), presented)) {
+            return Optional.empty();
+        }
+        ByteBuffer payload = ByteBuffer.wrap(raw, 0, PAYLOAD_LENGTH);
+        if (payload.get() != FORMAT || payload.get() != expected.code) {
+            return Optional.empty();
+        }
+        long userId = payload.getLong();
+        int tokenVersion = payload.getInt();
+        Instant expiresAt = Instant.ofEpochSecond(payload.getLong());
+        if (!Instant.now().isBefore(expiresAt)) {
+            return Optional.empty();
+        }
+        return Optional.of(new Claims(expected, userId, tokenVersion, expiresAt));
+    }
+
+    // MAC over the payload bytes of token plus the normalised email; returns the truncated tag
+    private byte[] mac(byte[] token, String email) {
+        Mac mac = macs.get();
+        mac.update(token, 0, PAYLOAD_LENGTH);
+        mac.update((byte) 0);
+        mac.update(EmailNormalizer.normalize(email).getBytes(StandardCharsets.UTF_8));
+        return Arrays.copyOf(mac.doFinal(), MAC_LENGTH);
+    }
+}
@@ -0,0 +1,224 @@
+// SmtpTransportPool.java - Long-lived SMTP connections shared by all outgoing email
+package com.paymentgateway.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Transport;
+import jakarta.mail.internet.MimeMessage;
+
+import java.util.Date;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Component
+public class SmtpTransportPool implements DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(SmtpTransportPool.class);
+
+    @Autowired(required = false)
+    private JavaMailSender mailSender;
+
+    @Value("${app.email.pool.max-connections:4}")
+    private int maxConnections;
+
+    @Value("${app.email.pool.idle-timeout-ms:60000}")
+    private long idleTimeoutMs;
+
+    @Value("${app.email.pool.max-messages-per-connection:100}")
+    private int maxMessagesPerConnection;
+
+    // A connection idle for longer than this is probed with NOOP before reuse
+    @Value("${app.email.pool.validate-after-idle-ms:5000}")
+    private long validateAfterIdleMs;
+
+    @Value("${app.email.pool.borrow-timeout-ms:10000}")
+    private long borrowTimeoutMs;
+
+    // Most recently used connection sits at the head, so the tail ages out first
+    private final LinkedBlockingDeque<PooledTransport> idle = new LinkedBlockingDeque<>();
+    private Semaphore permits;
+    private volatile boolean closed;
+
+    private final AtomicLong connectionsOpened = new AtomicLong();
+    private final AtomicLong messagesSent = new AtomicLong();
+
+    private static final class PooledTransport {
+        final Transport transport;
+        int messagesSent;
+        long lastUsed = System.currentTimeMillis();
+
+        PooledTransport(Transport transport) {
+            this.transport = transport;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        // Caps connections in use plus idle; a waiting sender blocks until one is released
+        permits = new Semaphore(Math.max(1, maxConnections), true);
+    }
+
+    // Sends over a pooled connection; falls back to the plain sender when it is not JavaMailSenderImpl
+    public void send(MimeMessage message) throws MessagingException {
+        if (!(mailSender instanceof JavaMailSenderImpl)) {
+            mailSender.send(message);
+            return;
+        }
+
+        prepare(message);
+        PooledTransport pooled = borrow();
+        boolean reusable = false;
+        try {
+            pooled.transport.sendMessage(message, message.getAllRecipients());
+            pooled.messagesSent++;
+            messagesSent.incrementAndGet();
+            reusable = pooled.messagesSent < maxMessagesPerConnection;
+        } finally {
+            release(pooled, reusable);
+        }
+    }
+
+    // Without this a quiet pool would hold its sockets until the next send, long after the server dropped them
+    @Scheduled(fixedDelayString = "${app.email.pool.evict-interval-ms:30000}")
+    public void evictIdleConnections() {
+        if (closed) {
+            return;
+        }
+        int before = idle.size();
+        evictIdle();
+        int evicted = before - idle.size();
+        if (evicted > 0) {
+            logger.debug("📡 Closed {} idle SMTP connections ({} left)", evicted, idle.size());
+        }
+    }
+
+    public int getIdleConnections() {
+        return idle.size();
+    }
+
+    public long getConnectionsOpened() {
+        return connectionsOpened.get();
+    }
+
+    public long getMessagesSent() {
+        return messagesSent.get();
+    }
+
+    // Same header handling JavaMailSenderImpl applies before sending
+    private void prepare(MimeMessage message) throws MessagingException {
+        if (message.getSentDate() == null) {
+            message.setSentDate(new Date());
+        }
+        String messageId = message.getMessageID();
+        message.saveChanges();
+        if (messageId != null) {
+            message.setHeader("Message-ID", messageId);
+        }
+    }
+
+    private PooledTransport borrow() throws MessagingException {
+        if (closed) {
+            throw new MessagingException("SMTP transport pool is closed");
+        }
+        try {
+            if (!permits.tryAcquire(borrowTimeoutMs, TimeUnit.MILLISECONDS)) {
+                throw new MessagingException("Timed out waiting for an SMTP connection");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MessagingException("Interrupted waiting for an SMTP connection", e);
+        }
+
+        try {
+            PooledTransport pooled;
+            while ((pooled = idle.pollFirst()) != null) {
+                if (isUsable(pooled)) {
+                    return pooled;
+                }
+                close(pooled);
+            }
+            return open();
+        } catch (MessagingException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private void release(PooledTransport pooled, boolean reusable) {
+        try {
+            if (reusable && !closed) {
+                pooled.lastUsed = System.currentTimeMillis();
+                idle.offerFirst(pooled);
+            } else {
+                close(pooled);
+            }
+            evictIdle();
+        } finally {
+            permits.release();
+        }
+    }
+
+    private boolean isUsable(PooledTransport pooled) {
+        long idleFor = System.currentTimeMillis() - pooled.lastUsed;
+        if (idleFor > idleTimeoutMs) {
+            return false;
+        }
+        if (idleFor > validateAfterIdleMs) {
+            // SMTPTransport.isConnected() issues a NOOP to the server
+            return pooled.transport.isConnected();
+        }
+        return true;
+    }
+
+    // Closes connections at the tail that have sat unused past the idle timeout
+    private void evictIdle() {
+        long cutoff = System.currentTimeMillis() - idleTimeoutMs;
+        PooledTransport oldest;
+        while ((oldest = idle.peekLast()) != null && oldest.lastUsed < cutoff) {
+            if (idle.removeLastOccurrence(oldest)) {
+                close(oldest);
+            }
+        }
+    }
+
+    private PooledTransport open() throws MessagingException {
+        JavaMailSenderImpl sender = (JavaMailSenderImpl) mailSender;
+        String protocol = sender.getProtocol() != null ? sender.getProtocol() : "smtp";
+        Transport transport = sender.getSession().getTransport(protocol);
+        transport.connect(sender.getHost(), sender.getPort(), sender.getUsername(), sender.getPassword());
+        connectionsOpened.incrementAndGet();
+        logger.info("📡 Opened SMTP connection to {}:{} ({} idle)", sender.getHost(), sender.getPort(), idle.size());
+        return new PooledTransport(transport);
+    }
+
+    private void close(PooledTransport pooled) {
+        try {
+            pooled.transport.close();
+        } catch (MessagingException e) {
+            logger.debug("SMTP connection did not close cleanly: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public void destroy() {
+        closed = true;
+        PooledTransport pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            close(pooled);
+        }
+        logger.info("📡 SMTP transport pool closed: {} connections opened, {} messages sent",
+                connectionsOpened.get(), messagesSent.get());
+    }
+}
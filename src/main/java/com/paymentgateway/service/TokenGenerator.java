@@ -0,0 +1,111 @@
+// TokenGenerator.java - Random reset codes and activation tokens from per-thread bulk entropy
+package com.paymentgateway.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Locale;
+
+// Every character is drawn uniformly from the alphabet (no modulo bias), so a token of
+// length L carries L * log2(alphabet size) bits: 5 per Crockford base32 character, ~5.95
+// per base62 character. For n tokens alive at once, the birthday bound gives a collision
+// probability of about n^2 / 2^(bits + 1):
+//   reset code, 8 x base32 = 40 bits:        10,000 live codes -> ~5e-5
+//                                            (the UUID-prefix code it replaces had 32 bits -> ~1e-2)
+//   activation token, 26 x base32 = 130 bits: effectively never
+// password_reset_tokens.token is unique, so a reset-code collision fails that insert rather
+// than handing out a shared code. Guessing is bounded separately by OtpAttemptLimiter.
+@Component
+public class TokenGenerator {
+
+    public enum Alphabet {
+        // Crockford base32: no I, L, O or U, case-insensitive, safe to read aloud or retype
+        CROCKFORD32("0123456789ABCDEFGHJKMNPQRSTVWXYZ"),
+        // Case-sensitive; more bits per character for tokens that only travel in links
+        BASE62("0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz");
+
+        final char[] symbols;
+        // Bits taken from each random byte; values >= symbols.length are rejected
+        final int mask;
+
+        Alphabet(String symbols) {
+            this.symbols = symbols.toCharArray();
+            this.mask = Integer.highestOneBit(this.symbols.length * 2 - 1) - 1;
+        }
+    }
+
+    private static final int BUFFER_SIZE = 512;
+
+    private final Alphabet alphabet;
+    private final int resetCodeLength;
+    private final int activationTokenLength;
+
+    // Each thread owns its generator and entropy buffer, so no lock is shared across request threads
+    private final ThreadLocal<EntropyBuffer> buffers = ThreadLocal.withInitial(EntropyBuffer::new);
+
+    public TokenGenerator(@Value("${app.tokens.alphabet:CROCKFORD32}") Alphabet alphabet,
+                          @Value("${app.tokens.reset-code-length:8}") int resetCodeLength,
+                          @Value("${app.tokens.activation-token-length:26}") int activationTokenLength) {
+        this.alphabet = alphabet;
+        this.resetCodeLength = resetCodeLength;
+        this.activationTokenLength = activationTokenLength;
+    }
+
+    private static final class EntropyBuffer {
+        final SecureRandom random = newSecureRandom();
+        final byte[] bytes = new byte[BUFFER_SIZE];
+        int next = BUFFER_SIZE; // empty, filled on first use
+
+        // One bulk nextBytes() call serves many tokens
+        int nextByte() {
+            if (next == bytes.length) {
+                random.nextBytes(bytes);
+                next = 0;
+            }
+            return bytes[next++] & 0xFF;
+        }
+    }
+
+    private static SecureRandom newSecureRandom() {
+        try {
+            // DRBG is per-instance and does not funnel through the shared NativePRNG lock
+            return SecureRandom.getInstance("DRBG");
+        } catch (NoSuchAlgorithmException e) {
+            return new SecureRandom();
+        }
+    }
+
+    // Written straight into the char[] the String is built from
+    public String generate(int length) {
+        EntropyBuffer buffer = buffers.get();
+        char[] symbols = alphabet.symbols;
+        int mask = alphabet.mask;
+        char[] token = new char[length];
+        for (int i = 0; i < length; ) {
+            int value = buffer.nextByte() & mask;
+            if (value < symbols.length) {
+                token[i++] = symbols[value];
+            }
+        }
+        return new String(token);
+    }
+
+    public String resetCode() {
+        return generate(resetCodeLength);
+    }
+
+    public String activationToken() {
+        return generate(activationTokenLength);
+    }
+
+    // Canonical form of a code typed back by a user. Crockford input is case-insensitive and
+    // reads O as 0 and I/L as 1; base62 codes are returned unchanged.
+    public String normalize(String code) {
+        if (code == null || alphabet != Alphabet.CROCKFORD32) {
+            return code;
+        }
+        return code.toUpperCase(Locale.ROOT).replace('O', '0').replace('I', '1').replace('L', '1');
+    }
+}
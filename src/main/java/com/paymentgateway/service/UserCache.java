@@ -0,0 +1,192 @@
+// UserCache.java - Bounded, TTL-based read-through cache of user rows keyed by normalised email
+package com.paymentgateway.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.paymentgateway.dto.UserAuthView;
+import com.paymentgateway.repository.UserRepository;
+import com.paymentgateway.util.EmailNormalizer;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+// Holds immutable UserAuthView projections, never managed entities, so a cached value can't be
+// mutated by one request and flushed by another. Writers call invalidate() right away
+// and again after commit. Each invalidation bumps its segment's generation, and a load
+// that started before the bump is not cached, so a reader that fetched the pre-commit
+// row can't put it back afterwards.
+//
+// Invalidation is local to this node. Another node keeps serving its copy until ttl-ms runs
+// out, so a password change, deactivation or role change can take that long to reach a
+// login handled elsewhere. Keep ttl-ms short when running several nodes. Single-use state
+// (OTPs, token_version checks) is never taken from here.
+@Component
+public class UserCache {
+
+    private static final int SEGMENT_BITS = 4;
+    private static final int SEGMENTS = 1 << SEGMENT_BITS;
+
+    private final UserRepository userRepository;
+    private final EmailBloomFilter emailBloomFilter;
+    private final boolean enabled;
+    private final long ttlMs;
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+
+    public UserCache(UserRepository userRepository,
+                     EmailBloomFilter emailBloomFilter,
+                     MeterRegistry meterRegistry,
+                     @Value("${app.user-cache.enabled:true}") boolean enabled,
+                     @Value("${app.user-cache.max-entries:10000}") int maxEntries,
+                     @Value("${app.user-cache.ttl-ms:60000}") long ttlMs) {
+        this.userRepository = userRepository;
+        this.emailBloomFilter = emailBloomFilter;
+        this.enabled = enabled;
+        this.ttlMs = ttlMs;
+        int perSegment = Math.max(1, (maxEntries + SEGMENTS - 1) / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(perSegment);
+        }
+        this.hits = Counter.builder("user.cache.requests").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("user.cache.requests").tag("result", "miss").register(meterRegistry);
+        this.evictions = Counter.builder("user.cache.evictions").register(meterRegistry);
+        Gauge.builder("user.cache.size", this, UserCache::size).register(meterRegistry);
+    }
+
+    public Optional<UserAuthView> findByEmail(String email) {
+        // Unknown addresses (typos, enumeration) are answered without a query
+        if (email == null || !emailBloomFilter.mightContain(email)) {
+            return Optional.empty();
+        }
+        if (!enabled) {
+            return userRepository.findAuthViewByEmail(email);
+        }
+        String key = EmailNormalizer.normalize(email);
+        Segment segment = segmentFor(key);
+        UserAuthView cached = segment.get(key, System.currentTimeMillis());
+        long generation = segment.generation();
+        // Lookups go through email_normalized, so any spelling of the address is the same user
+        if (cached != null) {
+            hits.increment();
+            return Optional.of(cached);
+        }
+        misses.increment();
+        Optional<UserAuthView> loaded = userRepository.findAuthViewByEmail(email);
+        // Absent users aren't cached; registration would otherwise have to race the negative entry
+        loaded.ifPresent(snapshot -> segment.put(key, snapshot, System.currentTimeMillis() + ttlMs, generation));
+        return loaded;
+    }
+
+    // Cached view only, no load on a miss
+    public Optional<UserAuthView> getIfPresent(String email) {
+        if (!enabled || email == null) {
+            return Optional.empty();
+        }
+        String key = EmailNormalizer.normalize(email);
+        UserAuthView cached = segmentFor(key).get(key, System.currentTimeMillis());
+        return Optional.ofNullable(cached);
+    }
+
+    public void invalidate(String email) {
+        if (email == null) {
+            return;
+        }
+        String key = EmailNormalizer.normalize(email);
+        segmentFor(key).remove(key);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    segmentFor(key).remove(key);
+                }
+            });
+        }
+    }
+
+    public void invalidateAll() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    private Segment segmentFor(String key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return segments[(h ^ (h >>> 16)) >>> (32 - SEGMENT_BITS)];
+    }
+
+    private record Entry(UserAuthView snapshot, long expiresAt) {
+    }
+
+    // Access-ordered map per segment: the eldest entry is the least recently used one
+    private final class Segment {
+        private final LinkedHashMap<String, Entry> map;
+        private long generation;
+
+        Segment(int maxEntries) {
+            this.map = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                    if (size() > maxEntries) {
+                        evictions.increment();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        synchronized UserAuthView get(String key, long now) {
+            Entry entry = map.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.expiresAt() <= now) {
+                map.remove(key);
+                return null;
+            }
+            return entry.snapshot();
+        }
+
+        synchronized long generation() {
+            return generation;
+        }
+
+        synchronized void put(String key, UserAuthView snapshot, long expiresAt, long loadedAtGeneration) {
+            if (generation == loadedAtGeneration) {
+                map.put(key, new Entry(snapshot, expiresAt));
+            }
+        }
+
+        synchronized void remove(String key) {
+            map.remove(key);
+            generation++;
+        }
+
+        synchronized void clear() {
+            map.clear();
+            generation++;
+        }
+
+        synchronized int size() {
+            return map.size();
+        }
+    }
+}
@@ -0,0 +1,422 @@
+// UserImportService.java - Bulk user onboarding: streamed parsing, parallel hashing, batched inserts
+package com.paymentgateway.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.paymentgateway.dto.UserImportReport;
+import com.paymentgateway.util.EmailNormalizer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.regex.Pattern;
+
+// Rows are read one at a time and handled in chunks of batch-size:
+//   1. validate and drop repeats within the file
+//   2. one query finds which addresses already exist
+//   3. passwords are hashed in parallel on the password-hashing pool
+//   4. one nextval() round trip reserves ids for the chunk (users.id is IDENTITY, which
+//      keeps Hibernate from batching, so the rows go in through JDBC with explicit ids)
+//   5. one batched INSERT ... ON CONFLICT DO NOTHING, in its own transaction
+// A failure in one chunk is reported against its rows and the import carries on.
+@Service
+public class UserImportService {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserImportService.class);
+
+    public enum Format { CSV, NDJSON }
+
+    private static final Pattern EMAIL = Pattern.compile("^[^@\\s]+@[^@\\s]+\\.[^@\\s]+$");
+
+    private static final String INSERT_SQL =
+            "INSERT INTO users (id, email, email_normalized, password, first_name, last_name, " +
+            "is_active, enabled, mfa_enabled, role, created_at, updated_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, true, false, ?, ?, ?) ON CONFLICT DO NOTHING";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final PasswordEncoder passwordEncoder;
+    private final EmailBloomFilter emailBloomFilter;
+    private final ObjectMapper objectMapper;
+
+    private final Counter importedRows;
+    private final Counter duplicateRows;
+    private final Counter failedRows;
+    private final Timer importTimer;
+
+    @Value("${app.users.import.batch-size:500}")
+    private int batchSize;
+
+    // Hashes in flight at once; keeps the import from overflowing the hashing queue
+    @Value("${app.users.import.hash-window:32}")
+    private int hashWindow;
+
+    @Value("${app.users.import.max-errors:1000}")
+    private int maxErrors;
+
+    @Value("${app.users.import.default-active:true}")
+    private boolean defaultActive;
+
+    // An import must not be a way to mint admins; widen deliberately if a file needs other roles
+    @Value("${app.users.import.allowed-roles:USER}")
+    private Set<String> allowedRoles;
+
+    public UserImportService(JdbcTemplate jdbcTemplate,
+                             PlatformTransactionManager transactionManager,
+                             PasswordEncoder passwordEncoder,
+                             EmailBloomFilter emailBloomFilter,
+                             ObjectMapper objectMapper,
+                             MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.passwordEncoder = passwordEncoder;
+        this.emailBloomFilter = emailBloomFilter;
+        this.objectMapper = objectMapper;
+        this.importedRows = Counter.builder("users.import.rows").tag("outcome", "imported").register(meterRegistry);
+        this.duplicateRows = Counter.builder("users.import.rows").tag("outcome", "duplicate").register(meterRegistry);
+        this.failedRows = Counter.builder("users.import.rows").tag("outcome", "failed").register(meterRegistry);
+        this.importTimer = Timer.builder("users.import.duration").register(meterRegistry);
+    }
+
+    private static final class ImportRow {
+        final long line;
+        final String email;
+        final String normalized;
+        final String password;
+        final String firstName;
+        final String lastName;
+        final String role;
+        final boolean active;
+        String passwordHash;
+        // Set once the row has been counted, so a failed chunk doesn't count it twice
+        boolean settled;
+
+        ImportRow(long line, String email, String password, String firstName, String lastName,
+                  String role, boolean active) {
+            this.line = line;
+            this.email = email;
+            this.normalized = EmailNormalizer.normalize(email);
+            this.password = password;
+            this.firstName = firstName;
+            this.lastName = lastName;
+            this.role = role;
+            this.active = active;
+        }
+    }
+
+    // Running totals for one import call
+    private final class Progress {
+        long total;
+        long imported;
+        long duplicates;
+        long failed;
+        boolean truncated;
+        final List<UserImportReport.RowError> errors = new ArrayList<>();
+        // Normalised emails already seen in this file
+        final Set<String> seen = new HashSet<>();
+
+        void reject(long line, String email, String reason, boolean duplicate) {
+            if (duplicate) {
+                duplicates++;
+                duplicateRows.increment();
+            } else {
+                failed++;
+                failedRows.increment();
+            }
+            if (errors.size() < maxErrors) {
+                errors.add(new UserImportReport.RowError(line, email, reason));
+            } else {
+                truncated = true;
+            }
+        }
+    }
+
+    public UserImportReport importUsers(InputStream input, Format format) throws IOException {
+        long start = System.nanoTime();
+        Progress progress = new Progress();
+        List<ImportRow> chunk = new ArrayList<>(batchSize);
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+            String[] header = null;
+            String line;
+            long lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                if (format == Format.CSV && header == null) {
+                    header = parseCsvLine(line);
+                    for (int i = 0; i < header.length; i++) {
+                        header[i] = header[i].trim().toLowerCase(Locale.ROOT);
+                    }
+                    continue;
+                }
+                progress.total++;
+                ImportRow row;
+                try {
+                    row = format == Format.CSV ? fromCsv(lineNumber, header, line) : fromJson(lineNumber, line);
+                } catch (IllegalArgumentException | IOException e) {
+                    progress.reject(lineNumber, null, "Unparseable row: " + e.getMessage(), false);
+                    continue;
+                }
+                String problem = validate(row);
+                if (problem != null) {
+                    progress.reject(row.line, row.email, problem, false);
+                    continue;
+                }
+                if (!progress.seen.add(row.normalized)) {
+                    progress.reject(row.line, row.email, "Duplicate email earlier in this file", true);
+                    continue;
+                }
+                chunk.add(row);
+                if (chunk.size() >= batchSize) {
+                    processChunk(chunk, progress);
+                    chunk.clear();
+                }
+            }
+        }
+        if (!chunk.isEmpty()) {
+            processChunk(chunk, progress);
+        }
+
+        long durationNanos = System.nanoTime() - start;
+        importTimer.record(Duration.ofNanos(durationNanos));
+        long durationMs = durationNanos / 1_000_000;
+        double rowsPerSecond = durationNanos == 0 ? 0 : progress.total * 1_000_000_000.0 / durationNanos;
+        logger.info("📥 User import finished: {} rows, {} imported, {} duplicates, {} failed in {} ms ({} rows/s)",
+                progress.total, progress.imported, progress.duplicates, progress.failed, durationMs,
+                String.format("%.1f", rowsPerSecond));
+        return new UserImportReport(progress.total, progress.imported, progress.duplicates, progress.failed,
+                durationMs, rowsPerSecond, progress.truncated, progress.errors);
+    }
+
+    private void processChunk(List<ImportRow> chunk, Progress progress) {
+        try {
+            // Set-based duplicate check against what is already stored
+            Set<String> existing = findExisting(chunk);
+            List<ImportRow> fresh = new ArrayList<>(chunk.size());
+            for (ImportRow row : chunk) {
+                if (existing.contains(row.normalized)) {
+                    row.settled = true;
+                    progress.reject(row.line, row.email, "User already exists", true);
+                } else {
+                    fresh.add(row);
+                }
+            }
+            if (fresh.isEmpty()) {
+                return;
+            }
+
+            hashPasswords(fresh);
+            List<Long> ids = reserveIds(fresh.size());
+            LocalDateTime now = LocalDateTime.now();
+            Timestamp timestamp = Timestamp.valueOf(now);
+            List<Object[]> args = new ArrayList<>(fresh.size());
+            for (int i = 0; i < fresh.size(); i++) {
+                ImportRow row = fresh.get(i);
+                args.add(new Object[] {
+                        ids.get(i), row.email, row.normalized, row.passwordHash, row.firstName, row.lastName,
+                        row.active, row.role, timestamp, timestamp
+                });
+            }
+
+            int[] counts = transactionTemplate.execute(status -> jdbcTemplate.batchUpdate(INSERT_SQL, args));
+            for (int i = 0; i < fresh.size(); i++) {
+                ImportRow row = fresh.get(i);
+                row.settled = true;
+                // 0 = lost a race with a concurrent registration on the unique email index
+                if (counts != null && counts[i] == 0) {
+                    progress.reject(row.line, row.email, "User already exists", true);
+                } else {
+                    progress.imported++;
+                    importedRows.increment();
+                    emailBloomFilter.add(row.email);
+                }
+            }
+        } catch (RuntimeException e) {
+            logger.warn("⚠️ User import chunk of {} rows failed: {}", chunk.size(), e.getMessage());
+            for (ImportRow row : chunk) {
+                if (!row.settled) {
+                    progress.reject(row.line, row.email, "Chunk failed: " + e.getMessage(), false);
+                }
+            }
+        }
+    }
+
+    private Set<String> findExisting(List<ImportRow> chunk) {
+        List<String> normalized = new ArrayList<>(chunk.size());
+        for (ImportRow row : chunk) {
+            normalized.add(row.normalized);
+        }
+        String[] keys = normalized.toArray(new String[0]);
+        // Legacy rows without email_normalized are compared on lower(email)
+        List<String> found = jdbcTemplate.query(connection -> {
+            var statement = connection.prepareStatement(
+                    "SELECT COALESCE(email_normalized, lower(email)) FROM users " +
+                    "WHERE email_normalized = ANY (?) OR (email_normalized IS NULL AND lower(email) = ANY (?))");
+            var array = connection.createArrayOf("varchar", keys);
+            statement.setArray(1, array);
+            statement.setArray(2, array);
+            return statement;
+        }, (rs, rowNum) -> rs.getString(1));
+        return new HashSet<>(found);
+    }
+
+    // Up to hashWindow hashes run at once on the bounded hashing pool
+    private void hashPasswords(List<ImportRow> rows) {
+        if (!(passwordEncoder instanceof BoundedPasswordEncoder bounded)) {
+            for (ImportRow row : rows) {
+                row.passwordHash = passwordEncoder.encode(row.password);
+            }
+            return;
+        }
+        Semaphore window = new Semaphore(Math.max(1, hashWindow));
+        List<CompletableFuture<Void>> pending = new ArrayList<>(rows.size());
+        for (ImportRow row : rows) {
+            window.acquireUninterruptibly();
+            pending.add(bounded.encodeAsync(row.password)
+                    .thenAccept(hash -> row.passwordHash = hash)
+                    .whenComplete((ignored, error) -> window.release()));
+        }
+        CompletableFuture.allOf(pending.toArray(new CompletableFuture[0])).join();
+    }
+
+    // One round trip for the whole chunk instead of one identity fetch per row
+    private List<Long> reserveIds(int count) {
+        return jdbcTemplate.queryForList(
+                "SELECT nextval(pg_get_serial_sequence('users', 'id')) FROM generate_series(1, ?)",
+                Long.class, count);
+    }
+
+    private ImportRow fromCsv(long line, String[] header, String text) {
+        String[] values = parseCsvLine(text);
+        Map<String, String> fields = new HashMap<>();
+        for (int i = 0; i < header.length && i < values.length; i++) {
+            fields.put(header[i], values[i]);
+        }
+        return toRow(line, fields);
+    }
+
+    private ImportRow fromJson(long line, String text) throws IOException {
+        JsonNode node = objectMapper.readTree(text);
+        if (node == null || !node.isObject()) {
+            throw new IllegalArgumentException("expected a JSON object");
+        }
+        Map<String, String> fields = new HashMap<>();
+        node.properties().forEach(entry ->
+                fields.put(entry.getKey().toLowerCase(Locale.ROOT), entry.getValue().asText()));
+        return toRow(line, fields);
+    }
+
+    // Accepts camelCase (NDJSON) and snake_case (CSV header) names
+    private ImportRow toRow(long line, Map<String, String> fields) {
+        String active = firstOf(fields, "active", "is_active", "isactive");
+        String role = firstOf(fields, "role");
+        return new ImportRow(line,
+                trimToNull(firstOf(fields, "email")),
+                firstOf(fields, "password"),
+                trimToNull(firstOf(fields, "firstname", "first_name")),
+                trimToNull(firstOf(fields, "lastname", "last_name")),
+                role == null || role.isBlank() ? "USER" : role.trim().toUpperCase(Locale.ROOT),
+                active == null || active.isBlank() ? defaultActive : Boolean.parseBoolean(active.trim()));
+    }
+
+    private String validate(ImportRow row) {
+        if (row.email == null || !EMAIL.matcher(row.email).matches()) {
+            return "Invalid email";
+        }
+        if (row.password == null || row.password.length() < 8) {
+            return "Password must be at least 8 characters";
+        }
+        // BCrypt only looks at the first 72 bytes
+        if (row.password.getBytes(StandardCharsets.UTF_8).length > 72) {
+            return "Password longer than 72 bytes";
+        }
+        if (row.firstName == null || row.lastName == null) {
+            return "First and last name are required";
+        }
+        if (!allowedRoles.contains(row.role)) {
+            return "Role not allowed for import: " + row.role;
+        }
+        return null;
+    }
+
+    private static String firstOf(Map<String, String> fields, String... names) {
+        for (String name : names) {
+            String value = fields.get(name);
+            if (value != null) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    private static String trimToNull(String value) {
+        if (value == null) {
+            return null;
+        }
+        String trimmed = value.trim();
+        return trimmed.isEmpty() ? null : trimmed;
+    }
+
+    // RFC 4180 fields on a single line: commas, "quoted, values" and "" escapes
+    static String[] parseCsvLine(String line) {
+        List<String> values = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        current.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    current.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                values.add(current.toString());
+                current.setLength(0);
+            } else {
+                current.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("unterminated quoted field");
+        }
+        values.add(current.toString());
+        return values.toArray(new String[0]);
+    }
+}
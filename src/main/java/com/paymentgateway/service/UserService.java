@@ -9,14 +9,13 @@ import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import com.paymentgateway.dto.UserAuthView;
 import com.paymentgateway.entity.User;
+import com.paymentgateway.exception.PasswordHashingBusyException;
 import com.paymentgateway.repository.UserRepository;
 
 import java.time.LocalDateTime;
-import java.util.List;
 import java.util.Optional;
-import java.util.UUID;
-import java.util.stream.Collectors;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -26,8 +25,14 @@ public class UserService implements UserDetailsService {
 
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
-    private final EmailService emailService;
+    private final EmailOutboxService emailOutboxService;
     private final OtpService otpService;
+    private final OtpHasher otpHasher;
+    private final UserCache userCache;
+    private final EmailBloomFilter emailBloomFilter;
+    private final BatchJobRunner batchJobRunner;
+    private final SignedTokenService signedTokenService;
+    private final TokenGenerator tokenGenerator;
     
     @Value("${app.email.verification.enabled:true}")
     private boolean emailVerificationEnabled;
@@ -35,12 +40,24 @@ public class UserService implements UserDetailsService {
     // Constructor injection
     public UserService(UserRepository userRepository, 
                       PasswordEncoder passwordEncoder, 
-                      EmailService emailService, 
-                      OtpService otpService) {
+                      EmailOutboxService emailOutboxService, 
+                      OtpService otpService,
+                      OtpHasher otpHasher,
+                      UserCache userCache,
+                      EmailBloomFilter emailBloomFilter,
+                      BatchJobRunner batchJobRunner,
+                      SignedTokenService signedTokenService,
+                      TokenGenerator tokenGenerator) {
         this.userRepository = userRepository;
         this.passwordEncoder = passwordEncoder;
-        this.emailService = emailService;
+        this.emailOutboxService = emailOutboxService;
         this.otpService = otpService;
+        this.otpHasher = otpHasher;
+        this.userCache = userCache;
+        this.emailBloomFilter = emailBloomFilter;
+        this.batchJobRunner = batchJobRunner;
+        this.signedTokenService = signedTokenService;
+        this.tokenGenerator = tokenGenerator;
         System.out.println("✅ UserService initialized with constructor injection");
     }
 
@@ -48,22 +65,23 @@ public class UserService implements UserDetailsService {
     public UserDetails loadUserByUsername(String email) throws UsernameNotFoundException {
         System.out.println("🔐 loadUserByUsername called for: " + email);
         
-        User user = userRepository.findByEmail(email)
+        UserAuthView user = userCache.findByEmail(email)
                 .orElseThrow(() -> {
                     System.out.println("❌ User not found: " + email);
                     return new UsernameNotFoundException("User not found with email: " + email);
                 });
         
-        System.out.println("✅ User found: " + user.getEmail());
-        System.out.println("   🔓 Active: " + user.getIsActive());
-        System.out.println("   ✅ Enabled: " + user.getEnabled());
+        System.out.println("✅ User found: " + user.email());
+        System.out.println("   🔓 Active: " + user.active());
+        System.out.println("   ✅ Enabled: " + user.enabled());
         
-        if (!user.getIsActive()) {
+        if (!user.active()) {
             System.out.println("❌ User not active: " + email);
             throw new UsernameNotFoundException("Account is not activated");
         }
         
-        return user;
+        // Detached copy; password upgrades go through PasswordRehashService
+        return user.toUser();
     }
 
     public User registerUser(User user) {
@@ -71,7 +89,7 @@ public class UserService implements UserDetailsService {
             System.out.println("🔧 Starting registration for: " + user.getEmail());
             
             // Check if user already exists
-            if (userRepository.findByEmail(user.getEmail()).isPresent()) {
+            if (existsByEmail(user.getEmail())) {
                 System.out.println("❌ User already exists: " + user.getEmail());
                 throw new RuntimeException("User already exists with email: " + user.getEmail());
             }
@@ -81,10 +99,13 @@ public class UserService implements UserDetailsService {
             user.setPassword(encodedPassword);
             System.out.println("✅ Password encoded for: " + user.getEmail());
             
-            // Set activation details and default values
-            String activationToken = UUID.randomUUID().toString();
-            user.setActivationToken(activationToken);
-            user.setActivationTokenExpiry(LocalDateTime.now().plusHours(24));
+            // Set activation details and default values; signed tokens need no stored copy
+            String activationToken = null;
+            if (!signedTokenService.isEnabled()) {
+                activationToken = tokenGenerator.activationToken();
+                user.setActivationToken(activationToken);
+                user.setActivationTokenExpiry(LocalDateTime.now().plusHours(24));
+            }
 
             // Auto-activate if email verification is disabled
             if (!emailVerificationEnabled) {
@@ -102,17 +123,21 @@ public class UserService implements UserDetailsService {
             
             System.out.println("💾 Saving user to database: " + user.getEmail());
             User savedUser = userRepository.save(user);
+            userCache.invalidate(savedUser.getEmail());
+            emailBloomFilter.add(savedUser.getEmail());
             System.out.println("✅ User saved with ID: " + savedUser.getId());
             
-            // Send activation email only if email verification is enabled
+            // Queue activation email only if email verification is enabled
             if (emailVerificationEnabled) {
-                try {
-                    String userName = savedUser.getFirstName() + " " + savedUser.getLastName();
-                    System.out.println("📧 Sending activation email to: " + savedUser.getEmail());
-                    emailService.sendActivationEmail(savedUser.getEmail(), userName);
-                } catch (Exception emailException) {
-                    System.out.println("⚠️ Activation email failed, but user was registered: " + emailException.getMessage());
-                    // Don't throw the exception - user is still registered successfully
+                String userName = savedUser.getFirstName() + " " + savedUser.getLastName();
+                System.out.println("📧 Queueing activation email for: " + savedUser.getEmail());
+                // Same transaction as the user row: both commit or neither does
+                if (signedTokenService.isEnabled()) {
+                    String signedToken = signedTokenService.issue(SignedTokenService.Purpose.ACTIVATION,
+                            savedUser.getId(), savedUser.getTokenVersion(), savedUser.getEmail());
+                    emailOutboxService.enqueueActivationEmail(savedUser.getEmail(), userName, signedToken);
+                } else {
+                    emailOutboxService.enqueueActivationEmail(savedUser.getEmail(), userName, activationToken);
                 }
             } else {
                 System.out.println("✅ SKIPPING EMAIL: Auto-activation enabled for: " + savedUser.getEmail());
@@ -121,6 +146,9 @@ public class UserService implements UserDetailsService {
             System.out.println("🎉 Registration completed successfully for: " + savedUser.getEmail());
             return savedUser;
             
+        } catch (PasswordHashingBusyException e) {
+            // Let the caller answer 503 instead of a generic failure
+            throw e;
         } catch (Exception e) {
             System.out.println("💥 Registration failed for " + user.getEmail() + ": " + e.getMessage());
             e.printStackTrace();
@@ -134,7 +162,7 @@ public class UserService implements UserDetailsService {
             System.out.println("🔧 TEST MODE: Registering user with auto-activation: " + user.getEmail());
             
             // Check if user already exists
-            if (userRepository.findByEmail(user.getEmail()).isPresent()) {
+            if (existsByEmail(user.getEmail())) {
                 throw new RuntimeException("User already exists with email: " + user.getEmail());
             }
             
@@ -149,27 +177,63 @@ public class UserService implements UserDetailsService {
             user.setUpdatedAt(LocalDateTime.now());
             
             User savedUser = userRepository.save(user);
+            userCache.invalidate(savedUser.getEmail());
+            emailBloomFilter.add(savedUser.getEmail());
             System.out.println("✅ TEST USER registered and activated: " + savedUser.getEmail());
             
             return savedUser;
             
+        } catch (PasswordHashingBusyException e) {
+            throw e;
         } catch (Exception e) {
             System.out.println("❌ Test registration failed: " + e.getMessage());
             throw new RuntimeException("Registration failed: " + e.getMessage());
         }
     }
 
+    // The link carries either a signed token or the stored one, told apart by length
+    public boolean activateWithToken(String email, String token) {
+        if (signedTokenService.isSignedToken(token)) {
+            return activateWithSignedToken(email, token);
+        }
+        return activateWithStoredToken(email, token);
+    }
+
+    // One conditional UPDATE: matches only the user's own unexpired token, then clears it
+    public boolean activateWithStoredToken(String email, String token) {
+        if (userRepository.activateByEmailAndToken(email, token, LocalDateTime.now()) == 0) {
+            System.out.println("❌ Invalid or expired activation token for: " + email);
+            return false;
+        }
+        userCache.invalidate(email);
+        System.out.println("✅ User activated with stored token: " + email);
+        return true;
+    }
+
+    // Stateless activation: the signature and expiry are checked in memory, then one
+    // conditional UPDATE activates the user and burns the token
+    public boolean activateWithSignedToken(String email, String token) {
+        Optional<SignedTokenService.Claims> claims =
+                signedTokenService.verify(token, SignedTokenService.Purpose.ACTIVATION, email);
+        if (claims.isEmpty()) {
+            System.out.println("❌ Invalid or expired activation token for: " + email);
+            return false;
+        }
+        if (userRepository.activateIfTokenVersion(claims.get().userId(), claims.get().tokenVersion(),
+                LocalDateTime.now()) == 0) {
+            System.out.println("❌ Activation token already used for: " + email);
+            return false;
+        }
+        userCache.invalidate(email);
+        System.out.println("✅ User activated with signed token: " + email);
+        return true;
+    }
+    
     public boolean activateUser(String email) {
         try {
             System.out.println("🔧 Activating user: " + email);
-            Optional<User> userOptional = userRepository.findByEmail(email);
-            
-            if (userOptional.isPresent()) {
-                User user = userOptional.get();
-                user.setIsActive(true);
-                user.setActivationToken(null);
-                user.setActivationTokenExpiry(null);
-                userRepository.save(user);
+            if (userRepository.activateByEmail(email, LocalDateTime.now()) > 0) {
+                userCache.invalidate(email);
                 System.out.println("✅ User activated: " + email);
                 return true;
             }
@@ -187,31 +251,23 @@ public class UserService implements UserDetailsService {
     public Map<String, String> generateAndSendOtp(String email) {
         try {
             System.out.println("🔧 Generating OTP for: " + email);
-            User user = userRepository.findByEmail(email)
+            UserAuthView user = userCache.findByEmail(email)
                     .orElseThrow(() -> new RuntimeException("User not found"));
             
-            if (!user.getIsActive()) {
+            if (!user.active()) {
                 throw new RuntimeException("Account is not activated");
             }
             
             // Use OtpService to generate OTP and return it for testing
-            Map<String, String> otpResponse = otpService.generateOtpWithResponse(user);
+            Map<String, String> otpResponse = otpService.generateOtpWithResponse(user.toUser());
             String otp = otpResponse.get("otp");
             
-            // Store encoded OTP in database as backup
-            user.setOtp(passwordEncoder.encode(otp));
-            user.setOtpExpiry(LocalDateTime.now().plusMinutes(10));
-            userRepository.save(user);
+            // Store keyed OTP hash in database as backup
+            storeOtpHash(user, otp);
             
-            // Try to send OTP email, but don't fail if email doesn't work
-            try {
-                System.out.println("📧 Attempting to send OTP email...");
-                emailService.sendOtpEmail(user.getEmail(), otp);
-                System.out.println("✅ OTP email sent successfully");
-            } catch (Exception emailException) {
-                System.out.println("⚠️ Email sending failed, but continuing: " + emailException.getMessage());
-                // Don't throw the exception - just log it and continue
-            }
+            // Queue OTP email; the outbox poller sends it after commit
+            System.out.println("📧 Queueing OTP email...");
+            emailOutboxService.enqueueOtpEmail(user.email(), otp);
             
             // Return OTP in response for testing
             Map<String, String> response = new HashMap<>();
@@ -235,21 +291,19 @@ public class UserService implements UserDetailsService {
     public Map<String, String> generateOtpWithoutEmail(String email) {
         try {
             System.out.println("🔧 Generating OTP without email for: " + email);
-            User user = userRepository.findByEmail(email)
+            UserAuthView user = userCache.findByEmail(email)
                     .orElseThrow(() -> new RuntimeException("User not found"));
             
-            if (!user.getIsActive()) {
+            if (!user.active()) {
                 throw new RuntimeException("Account is not activated");
             }
             
             // Use OtpService to generate OTP
-            Map<String, String> otpResponse = otpService.generateOtpWithResponse(user);
+            Map<String, String> otpResponse = otpService.generateOtpWithResponse(user.toUser());
             String otp = otpResponse.get("otp");
             
-            // Store encoded OTP
-            user.setOtp(passwordEncoder.encode(otp));
-            user.setOtpExpiry(LocalDateTime.now().plusMinutes(10));
-            userRepository.save(user);
+            // Store keyed OTP hash
+            storeOtpHash(user, otp);
             
             // Return OTP in response for testing
             Map<String, String> response = new HashMap<>();
@@ -272,15 +326,15 @@ public class UserService implements UserDetailsService {
     public Map<String, String> generateQuickOtp(String email) {
         try {
             System.out.println("🔧 Generating quick OTP for testing: " + email);
-            User user = userRepository.findByEmail(email)
+            UserAuthView user = userCache.findByEmail(email)
                     .orElseThrow(() -> new RuntimeException("User not found"));
             
-            if (!user.getIsActive()) {
+            if (!user.active()) {
                 throw new RuntimeException("Account is not activated");
             }
             
             // Use OtpService for quick in-memory OTP
-            String otp = otpService.generateOtpForTesting(user);
+            String otp = otpService.generateOtpForTesting(user.toUser());
             
             // Return OTP immediately for testing
             Map<String, String> response = new HashMap<>();
@@ -312,19 +366,25 @@ public class UserService implements UserDetailsService {
             }
             
             // Fallback to database OTP validation
-            User user = userRepository.findByEmail(email)
+            UserAuthView user = userCache.findByEmail(email)
                     .orElseThrow(() -> new RuntimeException("User not found"));
             
-            if (!user.getIsActive()) {
+            if (!user.active()) {
                 throw new RuntimeException("Account is not activated");
             }
             
-            boolean dbValid = user.isOtpValid() && passwordEncoder.matches(otp, user.getOtp());
+            // Checked against the row, never the cached view: the HMAC is deterministic, so the
+            // comparison and the consumption are one conditional UPDATE
+            LocalDateTime now = LocalDateTime.now();
+            boolean dbValid = userRepository.consumeOtp(user.id(), otpHasher.hash(user.email(), otp), now) > 0;
+            if (!dbValid) {
+                // Rows written before the switch to HMAC hold a salted BCrypt hash, matched in Java
+                String stored = userRepository.findUnexpiredOtp(user.id(), now).orElse(null);
+                dbValid = otpHasher.isLegacy(stored) && otpHasher.matches(user.email(), otp, stored)
+                        && userRepository.consumeOtp(user.id(), stored, now) > 0;
+            }
             
             if (dbValid) {
-                user.setOtp(null);
-                user.setOtpExpiry(null);
-                userRepository.save(user);
                 System.out.println("✅ OTP verified successfully (database) for: " + email);
             } else {
                 System.out.println("❌ OTP verification failed for: " + email);
@@ -338,57 +398,115 @@ public class UserService implements UserDetailsService {
         }
     }
 
+    // Managed entity, for callers that modify and save it
     public Optional<User> findByEmail(String email) {
+        if (!emailBloomFilter.mightContain(email)) {
+            return Optional.empty();
+        }
         return userRepository.findByEmail(email);
     }
+    
+    // Cached read-only view, for callers that only look
+    public Optional<UserAuthView> findAuthViewByEmail(String email) {
+        return userCache.findByEmail(email);
+    }
+    
+    private void storeOtpHash(UserAuthView user, String otp) {
+        LocalDateTime now = LocalDateTime.now();
+        // The cached view holds no OTP columns, so there is nothing to invalidate
+        userRepository.updateOtp(user.id(), otpHasher.hash(user.email(), otp), now.plusMinutes(10), now);
+    }
 
     public Optional<User> findById(Long id) {
         return userRepository.findById(id);
     }
 
     public User updateUser(User user) {
-        if (!userRepository.existsById(user.getId())) {
-            throw new RuntimeException("User not found with id: " + user.getId());
-        }
+        User existing = userRepository.findById(user.getId())
+                .orElseThrow(() -> new RuntimeException("User not found with id: " + user.getId()));
+        // A spelling that belongs to another account fails here rather than on the unique index at flush
+        userRepository.findByEmail(user.getEmail())
+                .filter(other -> !other.getId().equals(existing.getId()))
+                .ifPresent(other -> {
+                    throw new RuntimeException("Email already in use: " + user.getEmail());
+                });
+        // The incoming object may be detached and never had the column; onUpdate renormalises it
+        user.setEmailNormalized(existing.getEmailNormalized());
+        // The email itself may be changing, so drop both keys
+        userCache.invalidate(existing.getEmail());
+        userCache.invalidate(user.getEmail());
+        emailBloomFilter.add(user.getEmail());
         return userRepository.save(user);
     }
 
     public void deleteUser(Long id) {
+        userRepository.findById(id).ifPresent(user -> userCache.invalidate(user.getEmail()));
         userRepository.deleteById(id);
     }
 
+    // Bloom filter, then cache, then an index-only EXISTS; never hydrates a User
     public boolean existsByEmail(String email) {
-        return userRepository.findByEmail(email).isPresent();
+        if (email == null || !emailBloomFilter.mightContain(email)) {
+            return false;
+        }
+        if (userCache.getIfPresent(email).isPresent()) {
+            return true;
+        }
+        return userRepository.existsByEmail(email);
+    }
+    
+    // Uninitialised proxy: enough to set a foreign key without a SELECT
+    public User getReference(Long id) {
+        return userRepository.getReferenceById(id);
     }
     
     // Add the missing method for PasswordResetController
     public void updatePassword(User user, String newPassword) {
         user.setPassword(passwordEncoder.encode(newPassword));
+        // Outstanding signed tokens die with the old password
+        user.setTokenVersion(user.getTokenVersion() + 1);
         userRepository.save(user);
+        userCache.invalidate(user.getEmail());
         System.out.println("✅ Password updated for: " + user.getEmail());
     }
     
+    // Stores a password hash that was computed by the caller
+    public Optional<User> applyEncodedPassword(Long userId, String encodedPassword) {
+        Optional<User> userOptional = userRepository.findById(userId);
+        userOptional.ifPresent(user -> {
+            user.setPassword(encodedPassword);
+            // Outstanding signed tokens die with the old password
+            user.setTokenVersion(user.getTokenVersion() + 1);
+            userRepository.save(user);
+            userCache.invalidate(user.getEmail());
+            System.out.println("✅ Password updated for: " + user.getEmail());
+        });
+        return userOptional;
+    }
+    
+    // Signed-token reset: false if the token's version is no longer current (already used)
+    public boolean applyEncodedPasswordIfTokenVersion(Long userId, int tokenVersion, String email,
+                                                      String encodedPassword) {
+        if (userRepository.updatePasswordIfTokenVersion(userId, tokenVersion, encodedPassword,
+                LocalDateTime.now()) == 0) {
+            return false;
+        }
+        userCache.invalidate(email);
+        System.out.println("✅ Password updated for: " + email);
+        return true;
+    }
+    
     public PasswordEncoder getPasswordEncoder() {
         return passwordEncoder;
     }
     
     @Transactional
+    // Runs as a chunked batch job (see /actuator/batchjobs) instead of loading every user
     public void fixExistingUsers() {
-        try {
-            System.out.println("🔧 Fixing existing users with null is_active field...");
-            List<User> usersWithNullActive = userRepository.findAll().stream()
-                    .filter(user -> user.getIsActive() == null)
-                    .collect(Collectors.toList());
-            
-            for (User user : usersWithNullActive) {
-                System.out.println("🔄 Fixing user: " + user.getEmail() + " - Setting isActive to true");
-                user.setIsActive(true);
-                userRepository.save(user);
-            }
-            
-            System.out.println("✅ Fixed " + usersWithNullActive.size() + " users");
-        } catch (Exception e) {
-            System.out.println("❌ Error fixing users: " + e.getMessage());
+        if (batchJobRunner.start(ActivateNullUsersJob.NAME, false)) {
+            System.out.println("🔧 Started batch job " + ActivateNullUsersJob.NAME + " for users with null is_active");
+        } else {
+            System.out.println("⏭️ Batch job " + ActivateNullUsersJob.NAME + " is already running");
         }
     }
     
@@ -400,11 +518,15 @@ public class UserService implements UserDetailsService {
                 User user = userOptional.get();
                 String encodedPassword = passwordEncoder.encode(newPassword);
                 user.setPassword(encodedPassword);
+                user.setTokenVersion(user.getTokenVersion() + 1);
                 userRepository.save(user);
+                userCache.invalidate(email);
                 System.out.println("✅ Password updated to BCrypt for: " + email);
             } else {
                 System.out.println("❌ User not found: " + email);
             }
+        } catch (PasswordHashingBusyException e) {
+            throw e;
         } catch (Exception e) {
             System.out.println("❌ Error updating password: " + e.getMessage());
             throw new RuntimeException("Failed to update password: " + e.getMessage());
@@ -0,0 +1,18 @@
+// EmailNormalizer.java - One canonical form per address, for cache keys and lookups
+package com.paymentgateway.util;
+
+import java.util.Locale;
+
+public final class EmailNormalizer {
+
+    private EmailNormalizer() {
+    }
+
+    // Trimmed and lower-cased with a fixed locale (a Turkish default locale would turn "I" into a dotless i)
+    public static String normalize(String email) {
+        if (email == null) {
+            return null;
+        }
+        return email.trim().toLowerCase(Locale.ROOT);
+    }
+}
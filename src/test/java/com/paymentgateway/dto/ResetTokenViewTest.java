@@ -0,0 +1,32 @@
+// ResetTokenViewTest.java - Which stored reset tokens ResetTokenView accepts
+package com.paymentgateway.dto;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ResetTokenViewTest {
+
+    private static ResetTokenView view(LocalDateTime expiryDate, boolean used) {
+        return new ResetTokenView(1L, "ABCD2345", expiryDate, used, 7L, "a@example.com");
+    }
+
+    @Test
+    void unusedUnexpiredTokenIsValid() {
+        assertTrue(view(LocalDateTime.now().plusMinutes(10), false).isValid());
+    }
+
+    @Test
+    void usedTokenIsRejectedEvenBeforeExpiry() {
+        assertFalse(view(LocalDateTime.now().plusMinutes(10), true).isValid());
+    }
+
+    @Test
+    void expiredTokenIsRejected() {
+        assertFalse(view(LocalDateTime.now().minusSeconds(1), false).isValid());
+        assertFalse(view(LocalDateTime.now().minusMinutes(10), true).isValid());
+    }
+}
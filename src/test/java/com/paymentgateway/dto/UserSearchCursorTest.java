@@ -0,0 +1,45 @@
+// UserSearchCursorTest.java - Round trip and rejection of malformed admin search cursors
+package com.paymentgateway.dto;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class UserSearchCursorTest {
+
+    private static String encodeRaw(String raw) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void datedCursorRoundTrips() {
+        UserSearchCursor cursor = new UserSearchCursor(LocalDateTime.of(2025, 3, 1, 12, 30, 15, 123_456_000), 42);
+        assertEquals(cursor, UserSearchCursor.decode(cursor.encode()));
+    }
+
+    @Test
+    void undatedCursorRoundTrips() {
+        UserSearchCursor cursor = new UserSearchCursor(null, Long.MAX_VALUE);
+        assertEquals(cursor, UserSearchCursor.decode(cursor.encode()));
+    }
+
+    @Test
+    void cursorIsTakenFromTheLastRow() {
+        LocalDateTime createdAt = LocalDateTime.of(2024, 1, 2, 3, 4);
+        UserSummary last = new UserSummary(7L, "a@example.com", "A", "B", "USER", true, true, createdAt);
+        assertEquals(new UserSearchCursor(createdAt, 7), UserSearchCursor.after(last));
+    }
+
+    @Test
+    void malformedCursorsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> UserSearchCursor.decode("not base64!"));
+        assertThrows(IllegalArgumentException.class, () -> UserSearchCursor.decode(encodeRaw("no separator")));
+        assertThrows(IllegalArgumentException.class, () -> UserSearchCursor.decode(encodeRaw("2025-13-01T00:00|1")));
+        assertThrows(IllegalArgumentException.class, () -> UserSearchCursor.decode(encodeRaw("|abc")));
+    }
+}
@@ -0,0 +1,194 @@
+// BatchJobRunnerTest.java - Chunking, checkpointing, claiming and failure handling of BatchJobRunner
+package com.paymentgateway.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import com.paymentgateway.entity.BatchJobCheckpoint;
+import com.paymentgateway.repository.BatchJobCheckpointRepository;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BatchJobRunnerTest {
+
+    private static final String JOB = "test-job";
+
+    // Checkpoint table stand-in: records what the runner wrote and when it finished
+    private static final class Checkpoints {
+        final List<Long> recordedLastIds = new CopyOnWriteArrayList<>();
+        final CountDownLatch finished = new CountDownLatch(1);
+        volatile BatchJobCheckpoint.Status finalStatus;
+        volatile String finalError;
+        volatile int claimResult = 1;
+        volatile int recordChunkResult = 1;
+
+        BatchJobCheckpointRepository repository() {
+            return (BatchJobCheckpointRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class<?>[] {BatchJobCheckpointRepository.class}, (proxy, method, args) -> switch (method.getName()) {
+                        case "createIfAbsent", "reset" -> 1;
+                        case "claim" -> claimResult;
+                        case "findById" -> Optional.empty();
+                        case "recordChunk" -> {
+                            if (recordChunkResult > 0) {
+                                recordedLastIds.add((Long) args[3]);
+                            }
+                            yield recordChunkResult;
+                        }
+                        case "finish" -> {
+                            finalStatus = (BatchJobCheckpoint.Status) args[3];
+                            finalError = (String) args[4];
+                            finished.countDown();
+                            yield 1;
+                        }
+                        case "hashCode" -> System.identityHashCode(proxy);
+                        case "equals" -> proxy == args[0];
+                        case "toString" -> "Checkpoints";
+                        default -> throw new UnsupportedOperationException(method.getName());
+                    });
+        }
+    }
+
+    private static final class CountingTransactionManager implements PlatformTransactionManager {
+        final AtomicInteger commits = new AtomicInteger();
+        final AtomicInteger rollbacks = new AtomicInteger();
+
+        @Override
+        public TransactionStatus getTransaction(TransactionDefinition definition) {
+            return new SimpleTransactionStatus();
+        }
+
+        @Override
+        public void commit(TransactionStatus status) {
+            commits.incrementAndGet();
+        }
+
+        @Override
+        public void rollback(TransactionStatus status) {
+            rollbacks.incrementAndGet();
+        }
+    }
+
+    // Walks ids 1..lastKey; the first failAtChunk-th chunk throws when failAtChunk > 0
+    private static BatchJob job(long lastKey, int chunkSize, int failAtChunk) {
+        AtomicInteger chunks = new AtomicInteger();
+        return new BatchJob() {
+            @Override
+            public String name() {
+                return JOB;
+            }
+
+            @Override
+            public String description() {
+                return "test";
+            }
+
+            @Override
+            public int chunkSize() {
+                return chunkSize;
+            }
+
+            @Override
+            public ChunkResult processChunk(long afterId, int size) {
+                if (chunks.incrementAndGet() == failAtChunk) {
+                    throw new IllegalStateException("boom");
+                }
+                long end = Math.min(lastKey, afterId + size);
+                return end <= afterId ? ChunkResult.done(afterId) : new ChunkResult((int) (end - afterId), end, 0);
+            }
+        };
+    }
+
+    private static BatchJobRunner runner(BatchJob job, Checkpoints checkpoints,
+                                         PlatformTransactionManager transactionManager) throws Exception {
+        BatchJobRunner runner = new BatchJobRunner(List.of(job), checkpoints.repository(), transactionManager,
+                new SimpleMeterRegistry());
+        // @Value fields, normally set by Spring
+        set(runner, "enabled", true);
+        set(runner, "defaultChunkSize", 1000);
+        set(runner, "throttleMs", 0L);
+        set(runner, "staleAfterMs", 300_000L);
+        return runner;
+    }
+
+    private static void set(Object target, String name, Object value) throws Exception {
+        Field field = target.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(target, value);
+    }
+
+    @Test
+    void runsChunkByChunkAndCheckpointsEachOne() throws Exception {
+        Checkpoints checkpoints = new Checkpoints();
+        CountingTransactionManager transactions = new CountingTransactionManager();
+        BatchJobRunner runner = runner(job(2500, 1000, 0), checkpoints, transactions);
+
+        assertTrue(runner.start(JOB, false));
+        assertTrue(checkpoints.finished.await(10, TimeUnit.SECONDS));
+
+        assertEquals(BatchJobCheckpoint.Status.COMPLETED, checkpoints.finalStatus);
+        assertEquals(List.of(1000L, 2000L, 2500L), checkpoints.recordedLastIds);
+        assertEquals(0, transactions.rollbacks.get());
+        runner.shutdown();
+    }
+
+    @Test
+    void jobClaimedElsewhereIsNotStarted() throws Exception {
+        Checkpoints checkpoints = new Checkpoints();
+        checkpoints.claimResult = 0;
+        BatchJobRunner runner = runner(job(2500, 1000, 0), checkpoints, new CountingTransactionManager());
+
+        assertFalse(runner.start(JOB, false));
+        assertFalse(checkpoints.finished.await(200, TimeUnit.MILLISECONDS));
+        assertTrue(checkpoints.recordedLastIds.isEmpty());
+        assertFalse(runner.start("unknown", false));
+        runner.shutdown();
+    }
+
+    @Test
+    void failingChunkIsRolledBackAndTheJobMarkedFailed() throws Exception {
+        Checkpoints checkpoints = new Checkpoints();
+        CountingTransactionManager transactions = new CountingTransactionManager();
+        BatchJobRunner runner = runner(job(2500, 1000, 2), checkpoints, transactions);
+
+        assertTrue(runner.start(JOB, false));
+        assertTrue(checkpoints.finished.await(10, TimeUnit.SECONDS));
+
+        assertEquals(BatchJobCheckpoint.Status.FAILED, checkpoints.finalStatus);
+        assertEquals("boom", checkpoints.finalError);
+        // Only the first chunk's checkpoint survived
+        assertEquals(List.of(1000L), checkpoints.recordedLastIds);
+        assertEquals(1, transactions.rollbacks.get());
+        runner.shutdown();
+    }
+
+    @Test
+    void lostOwnershipRollsTheChunkBack() throws Exception {
+        Checkpoints checkpoints = new Checkpoints();
+        checkpoints.recordChunkResult = 0;
+        CountingTransactionManager transactions = new CountingTransactionManager();
+        BatchJobRunner runner = runner(job(2500, 1000, 0), checkpoints, transactions);
+
+        assertTrue(runner.start(JOB, false));
+        assertTrue(checkpoints.finished.await(10, TimeUnit.SECONDS));
+
+        assertEquals(BatchJobCheckpoint.Status.FAILED, checkpoints.finalStatus);
+        assertTrue(checkpoints.finalError.contains("lost ownership"), checkpoints.finalError);
+        assertEquals(1, transactions.rollbacks.get());
+        runner.shutdown();
+    }
+}
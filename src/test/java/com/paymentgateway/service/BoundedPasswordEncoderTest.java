@@ -0,0 +1,104 @@
+// BoundedPasswordEncoderTest.java - Capacity and timeout behaviour of BoundedPasswordEncoder
+package com.paymentgateway.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import com.paymentgateway.exception.PasswordHashingBusyException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BoundedPasswordEncoderTest {
+
+    // Blocks every encode() until released, and counts the ones that actually ran
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final AtomicInteger started = new AtomicInteger();
+    private final PasswordEncoder slow = new PasswordEncoder() {
+        @Override
+        public String encode(CharSequence rawPassword) {
+            started.incrementAndGet();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "hash:" + rawPassword;
+        }
+
+        @Override
+        public boolean matches(CharSequence rawPassword, String encodedPassword) {
+            return encode(rawPassword).equals(encodedPassword);
+        }
+    };
+
+    private BoundedPasswordEncoder encoder;
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        if (encoder != null) {
+            encoder.shutdown();
+        }
+    }
+
+    @Test
+    void refusesWorkBeyondThreadsPlusQueue() throws Exception {
+        encoder = new BoundedPasswordEncoder(slow, 1, 1, 10_000, new SimpleMeterRegistry());
+        CompletableFuture<String> running = encoder.encodeAsync("a");
+        CompletableFuture<String> queued = encoder.encodeAsync("b");
+        CompletableFuture<String> refused = encoder.encodeAsync("c");
+
+        ExecutionException e = assertThrows(ExecutionException.class, refused::get);
+        assertInstanceOf(PasswordHashingBusyException.class, e.getCause());
+
+        release.countDown();
+        assertEquals("hash:a", running.get(5, TimeUnit.SECONDS));
+        assertEquals("hash:b", queued.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void timedOutWorkStillCountsAndQueuedWorkIsSkipped() throws Exception {
+        encoder = new BoundedPasswordEncoder(slow, 1, 1, 50, new SimpleMeterRegistry());
+        CompletableFuture<String> running = encoder.encodeAsync("a");
+        while (started.get() == 0) {
+            Thread.sleep(1);
+        }
+        // Waits in the queue behind "a" and times out there
+        assertThrows(PasswordHashingBusyException.class, () -> encoder.encode("b"));
+
+        // The abandoned entry still holds its queue slot, so the pool stays bounded
+        CompletableFuture<String> refused = encoder.encodeAsync("c");
+        ExecutionException e = assertThrows(ExecutionException.class, refused::get);
+        assertInstanceOf(PasswordHashingBusyException.class, e.getCause());
+
+        release.countDown();
+        assertEquals("hash:a", running.get(5, TimeUnit.SECONDS));
+        // "b" is dequeued once "a" finishes and skipped without hashing; until then the queue is full
+        CompletableFuture<String> next = encoder.encodeAsync("d");
+        for (int i = 0; i < 5_000 && next.isCompletedExceptionally(); i++) {
+            Thread.sleep(1);
+            next = encoder.encodeAsync("d");
+        }
+        assertEquals("hash:d", next.get(5, TimeUnit.SECONDS));
+        assertEquals(2, started.get());
+    }
+
+    @Test
+    void synchronousCallsReturnTheDelegateResult() {
+        encoder = new BoundedPasswordEncoder(slow, 2, 4, 5_000, new SimpleMeterRegistry());
+        release.countDown();
+        assertEquals("hash:secret", encoder.encode("secret"));
+        assertTrue(encoder.matches("secret", "hash:secret"));
+    }
+}
@@ -0,0 +1,85 @@
+// EmailBloomFilterTest.java - No false negatives, and a false-positive rate near the one it was sized for
+package com.paymentgateway.service;
+
+import org.junit.jupiter.api.Test;
+
+import com.paymentgateway.util.EmailNormalizer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EmailBloomFilterTest {
+
+    private static final int INSERTIONS = 100_000;
+    private static final double FPP = 0.01;
+
+    private static String email(Random random) {
+        return "user" + Long.toUnsignedString(random.nextLong(), 36) + "@example" + random.nextInt(50) + ".com";
+    }
+
+    @Test
+    void everyInsertedEmailIsFound() {
+        EmailBloomFilter.Bits bits = new EmailBloomFilter.Bits(INSERTIONS, FPP);
+        Random random = new Random(42);
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < INSERTIONS; i++) {
+            String key = EmailNormalizer.normalize(email(random));
+            keys.add(key);
+            bits.put(key);
+        }
+        for (String key : keys) {
+            assertTrue(bits.mightContain(key), key);
+        }
+    }
+
+    @Test
+    void concurrentInsertsAreNotLost() throws Exception {
+        EmailBloomFilter.Bits bits = new EmailBloomFilter.Bits(INSERTIONS, FPP);
+        int threads = 8;
+        List<List<String>> perThread = new ArrayList<>();
+        Random random = new Random(7);
+        for (int t = 0; t < threads; t++) {
+            List<String> keys = new ArrayList<>();
+            for (int i = 0; i < INSERTIONS / threads; i++) {
+                keys.add(email(random));
+            }
+            perThread.add(keys);
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        for (List<String> keys : perThread) {
+            pool.execute(() -> keys.forEach(bits::put));
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(30, TimeUnit.SECONDS));
+        for (List<String> keys : perThread) {
+            for (String key : keys) {
+                assertTrue(bits.mightContain(key), key);
+            }
+        }
+    }
+
+    @Test
+    void falsePositiveRateStaysNearTheTarget() {
+        EmailBloomFilter.Bits bits = new EmailBloomFilter.Bits(INSERTIONS, FPP);
+        Random random = new Random(1);
+        for (int i = 0; i < INSERTIONS; i++) {
+            bits.put(email(random));
+        }
+        // Different prefix, so none of these were inserted
+        int probes = 200_000;
+        int falsePositives = 0;
+        for (int i = 0; i < probes; i++) {
+            if (bits.mightContain("absent" + i + "@example.org")) {
+                falsePositives++;
+            }
+        }
+        double rate = (double) falsePositives / probes;
+        assertTrue(rate < FPP * 1.5, "false-positive rate " + rate);
+    }
+}
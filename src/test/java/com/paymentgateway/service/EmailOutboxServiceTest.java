@@ -0,0 +1,206 @@
+// EmailOutboxServiceTest.java - Deliver-by deadlines, retries and executor rejection in the outbox poller
+package com.paymentgateway.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import com.paymentgateway.entity.EmailOutbox;
+import com.paymentgateway.repository.EmailOutboxRepository;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Proxy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EmailOutboxServiceTest {
+
+    // Outbox table stand-in: hands out one batch, then records the outcome written for each row
+    private static final class FakeOutbox {
+        final List<EmailOutbox> due = new ArrayList<>();
+        final List<String> outcomes = new ArrayList<>();
+        final List<LocalDateTime> nextAttempts = new ArrayList<>();
+
+        EmailOutboxRepository repository() {
+            return (EmailOutboxRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class<?>[] {EmailOutboxRepository.class}, (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "lockDueBatch": {
+                                List<EmailOutbox> batch = new ArrayList<>(due);
+                                due.clear();
+                                return batch;
+                            }
+                            case "markClaimed":
+                                return 1;
+                            case "markSent":
+                            case "markDead":
+                                outcomes.add(method.getName() + ":" + args[0]);
+                                return 1;
+                            case "markFailed":
+                            case "markDeferred":
+                                outcomes.add(method.getName() + ":" + args[0]);
+                                nextAttempts.add((LocalDateTime) args[4]);
+                                return 1;
+                            case "save":
+                                due.add((EmailOutbox) args[0]);
+                                return args[0];
+                            case "hashCode":
+                                return System.identityHashCode(proxy);
+                            case "equals":
+                                return proxy == args[0];
+                            case "toString":
+                                return "FakeOutbox";
+                            default:
+                                throw new UnsupportedOperationException(method.getName());
+                        }
+                    });
+        }
+    }
+
+    // Delivery stand-in: fails when told to, and counts what it was asked to send
+    private static final class FakeEmailService extends EmailService {
+        final List<String> delivered = new ArrayList<>();
+        boolean failing;
+
+        @Override
+        public void deliver(EmailOutbox.Type type, String toEmail, String payload) {
+            if (failing) {
+                throw new IllegalStateException("relay refused");
+            }
+            delivered.add(type + ":" + toEmail);
+        }
+    }
+
+    private static final class NoOpTransactionManager implements PlatformTransactionManager {
+        @Override
+        public TransactionStatus getTransaction(TransactionDefinition definition) {
+            return new SimpleTransactionStatus();
+        }
+
+        @Override
+        public void commit(TransactionStatus status) {
+        }
+
+        @Override
+        public void rollback(TransactionStatus status) {
+        }
+    }
+
+    private static EmailOutboxService service(FakeOutbox outbox, FakeEmailService emailService,
+                                              TaskExecutor executor) throws Exception {
+        EmailCircuitBreaker circuitBreaker = new EmailCircuitBreaker();
+        set(circuitBreaker, "windowSize", 20);
+        circuitBreaker.init();
+        EmailOutboxService service = new EmailOutboxService(outbox.repository(), emailService, circuitBreaker,
+                executor, null, new NoOpTransactionManager(), new SimpleMeterRegistry());
+        // @Value fields, normally set by Spring
+        set(service, "outboxEnabled", true);
+        set(service, "batchSize", 50);
+        set(service, "leaseSeconds", 300L);
+        set(service, "maxAttempts", 8);
+        set(service, "initialBackoffSeconds", 30L);
+        set(service, "maxBackoffSeconds", 3600L);
+        set(service, "otpTtlSeconds", 600L);
+        set(service, "resetTtlSeconds", 600L);
+        set(service, "activationTtlSeconds", 86400L);
+        return service;
+    }
+
+    private static void set(Object target, String name, Object value) throws Exception {
+        Field field = target.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(target, value);
+    }
+
+    private static EmailOutbox row(long id, EmailOutbox.Type type, int attempts, LocalDateTime deliverBy) {
+        EmailOutbox row = new EmailOutbox(type, "user" + id + "@example.com", "123456");
+        row.setId(id);
+        row.setAttempts(attempts);
+        row.setDeliverBy(deliverBy);
+        return row;
+    }
+
+    @Test
+    void enqueuedRowsGetADeadlinePerType() throws Exception {
+        FakeOutbox outbox = new FakeOutbox();
+        EmailOutboxService service = service(outbox, new FakeEmailService(), Runnable::run);
+
+        service.enqueueOtpEmail("a@example.com", "123456");
+        service.enqueueActivationEmail("b@example.com", "Ann Lee", "TOKEN");
+
+        EmailOutbox otp = outbox.due.get(0);
+        EmailOutbox activation = outbox.due.get(1);
+        assertEquals(otp.getCreatedAt().plusSeconds(600), otp.getDeliverBy());
+        assertEquals(activation.getCreatedAt().plusSeconds(86400), activation.getDeliverBy());
+    }
+
+    @Test
+    void rowPastItsDeadlineIsDeadLetteredWithoutSending() throws Exception {
+        FakeOutbox outbox = new FakeOutbox();
+        FakeEmailService emailService = new FakeEmailService();
+        outbox.due.add(row(1, EmailOutbox.Type.OTP, 3, LocalDateTime.now().minusSeconds(1)));
+        outbox.due.add(row(2, EmailOutbox.Type.OTP, 0, LocalDateTime.now().plusMinutes(10)));
+
+        service(outbox, emailService, Runnable::run).pollOutbox();
+
+        assertEquals(List.of("markDead:1", "markSent:2"), outbox.outcomes);
+        assertEquals(List.of("OTP:user2@example.com"), emailService.delivered);
+    }
+
+    @Test
+    void failureWhoseRetryWouldLandPastTheDeadlineIsDeadLettered() throws Exception {
+        FakeOutbox outbox = new FakeOutbox();
+        FakeEmailService emailService = new FakeEmailService();
+        emailService.failing = true;
+        // 5th attempt backs off 480 s or more, past a deadline two minutes away
+        outbox.due.add(row(1, EmailOutbox.Type.OTP, 4, LocalDateTime.now().plusMinutes(2)));
+        // Same failure without a near deadline is retried
+        outbox.due.add(row(2, EmailOutbox.Type.ACTIVATION, 4, LocalDateTime.now().plusHours(24)));
+
+        service(outbox, emailService, Runnable::run).pollOutbox();
+
+        assertEquals(List.of("markDead:1", "markFailed:2"), outbox.outcomes);
+        assertTrue(outbox.nextAttempts.get(0).isAfter(LocalDateTime.now().plusSeconds(470)));
+    }
+
+    @Test
+    void rowsWithoutADeadlineAreRetriedAsBefore() throws Exception {
+        FakeOutbox outbox = new FakeOutbox();
+        FakeEmailService emailService = new FakeEmailService();
+        emailService.failing = true;
+        outbox.due.add(row(1, EmailOutbox.Type.OTP, 0, null));
+        outbox.due.add(row(2, EmailOutbox.Type.OTP, 7, null));
+
+        service(outbox, emailService, Runnable::run).pollOutbox();
+
+        assertEquals(List.of("markFailed:1", "markDead:2"), outbox.outcomes);
+    }
+
+    @Test
+    void rejectedRowIsReleasedImmediately() throws Exception {
+        FakeOutbox outbox = new FakeOutbox();
+        FakeEmailService emailService = new FakeEmailService();
+        outbox.due.add(row(1, EmailOutbox.Type.OTP, 0, LocalDateTime.now().plusMinutes(10)));
+        TaskExecutor full = task -> {
+            throw new RejectedExecutionException("queue full");
+        };
+        LocalDateTime before = LocalDateTime.now();
+
+        service(outbox, emailService, full).pollOutbox();
+
+        assertEquals(List.of("markDeferred:1"), outbox.outcomes);
+        // Due again straight away, not after the 300 s lease
+        assertTrue(!outbox.nextAttempts.get(0).isAfter(LocalDateTime.now())
+                && !outbox.nextAttempts.get(0).isBefore(before));
+        assertTrue(emailService.delivered.isEmpty());
+    }
+}
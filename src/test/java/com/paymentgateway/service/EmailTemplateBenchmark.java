@@ -0,0 +1,147 @@
+// EmailTemplateBenchmark.java - Precompiled EmailTemplate rendering vs the old string-concatenation builders
+package com.paymentgateway.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+// Run with: mvn test-compile exec:java -Dexec.classpathScope=test
+//               -Dexec.mainClass=com.paymentgateway.service.EmailTemplateBenchmark
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EmailTemplateBenchmark {
+
+    private EmailTemplate activationTemplate;
+    private EmailTemplate otpTemplate;
+    private String userName;
+    private String email;
+    private String otpCode;
+
+    @Setup
+    public void setUp() {
+        activationTemplate = EmailTemplate.load("email-templates/activation.html", "userName", "activationLink");
+        otpTemplate = EmailTemplate.load("email-templates/otp.html", "otpCode");
+        // Not constants, so the JIT cannot fold the concatenations away
+        userName = new String("Jane Doe");
+        email = new String("jane.doe@example.com");
+        otpCode = new String("042817");
+    }
+
+    @Benchmark
+    public String activationLegacy() {
+        return buildActivationEmailContent(userName, email);
+    }
+
+    @Benchmark
+    public String activationTemplate() {
+        return activationTemplate.render(userName, "http://localhost:10000/api/auth/activate?email=" + email);
+    }
+
+    @Benchmark
+    public String otpLegacy() {
+        return buildOtpEmailContent(otpCode);
+    }
+
+    @Benchmark
+    public String otpTemplate() {
+        return otpTemplate.render(otpCode);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(EmailTemplateBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    // The builders EmailService used before the templates, kept verbatim as the baseline
+    private static String buildActivationEmailContent(String userName, String email) {
+        String activationLink = "http://localhost:10000/api/auth/activate?email=" + email;
+        
+        return "<!DOCTYPE html>" +
+               "<html>" +
+               "<head>" +
+               "    <meta charset=\"UTF-8\">" +
+               "    <style>" +
+               "        body { font-family: Arial, sans-serif; line-height: 1.6; color: #333; }" +
+               "        .container { max-width: 600px; margin: 0 auto; padding: 20px; }" +
+               "        .header { background: linear-gradient(135deg, #667eea 0%, #764ba2 100%); color: white; padding: 30px; text-align: center; border-radius: 10px 10px 0 0; }" +
+               "        .content { background: #f9f9f9; padding: 30px; border-radius: 0 0 10px 10px; }" +
+               "        .activation-btn { display: inline-block; padding: 12px 24px; background: #667eea; color: white; text-decoration: none; border-radius: 5px; margin: 20px 0; }" +
+               "        .footer { text-align: center; margin-top: 20px; font-size: 12px; color: #666; }" +
+               "    </style>" +
+               "</head>" +
+               "<body>" +
+               "    <div class=\"container\">" +
+               "        <div class=\"header\">" +
+               "            <h1>Kcoders</h1>" +
+               "            <h2>Activate Your Account</h2>" +
+               "        </div>" +
+               "        <div class=\"content\">" +
+               "            <p>Hello <strong>" + userName + "</strong>,</p>" +
+               "            <p>Welcome to Kcoders! Thank you for registering with us.</p>" +
+               "            <p>To activate your account and start using our services, please click the button below:</p>" +
+               "            <div style=\"text-align: center;\">" +
+               "                <a href=\"" + activationLink + "\" class=\"activation-btn\">Activate My Account</a>" +
+               "            </div>" +
+               "            <p>Or copy and paste this link in your browser:<br>" +
+               "            <code>" + activationLink + "</code></p>" +
+               "            <p>If you didn't create an account with us, please ignore this email.</p>" +
+               "            <p>Best regards,<br>The Kcoders Team</p>" +
+               "        </div>" +
+               "        <div class=\"footer\">" +
+               "            <p>&copy; 2025 Kcoders. All rights reserved.</p>" +
+               "        </div>" +
+               "    </div>" +
+               "</body>" +
+               "</html>";
+    }
+
+    private static String buildOtpEmailContent(String otpCode) {
+        return "<!DOCTYPE html>" +
+               "<html>" +
+               "<head>" +
+               "    <meta charset=\"UTF-8\">" +
+               "    <style>" +
+               "        body { font-family: Arial, sans-serif; line-height: 1.6; color: #333; }" +
+               "        .container { max-width: 600px; margin: 0 auto; padding: 20px; }" +
+               "        .header { background: linear-gradient(135deg, #667eea 0%, #764ba2 100%); color: white; padding: 30px; text-align: center; border-radius: 10px 10px 0 0; }" +
+               "        .content { background: #f9f9f9; padding: 30px; border-radius: 0 0 10px 10px; }" +
+               "        .otp-code { font-size: 32px; font-weight: bold; text-align: center; color: #667eea; margin: 20px 0; padding: 15px; background: white; border-radius: 5px; letter-spacing: 5px; }" +
+               "        .footer { text-align: center; margin-top: 20px; font-size: 12px; color: #666; }" +
+               "    </style>" +
+               "</head>" +
+               "<body>" +
+               "    <div class=\"container\">" +
+               "        <div class=\"header\">" +
+               "            <h1>Kcoders</h1>" +
+               "            <h2>Login Verification Code</h2>" +
+               "        </div>" +
+               "        <div class=\"content\">" +
+               "            <p>Hello,</p>" +
+               "            <p>Your verification code for Kcoders login is:</p>" +
+               "            <div class=\"otp-code\">" + otpCode + "</div>" +
+               "            <p>This code will expire in 10 minutes. If you didn't request this login, please ignore this email.</p>" +
+               "            <p>Best regards,<br>The Kcoders Team</p>" +
+               "        </div>" +
+               "        <div class=\"footer\">" +
+               "            <p>&copy; 2025 Kcoders. All rights reserved.</p>" +
+               "        </div>" +
+               "    </div>" +
+               "</body>" +
+               "</html>";
+    }
+}
@@ -0,0 +1,144 @@
+// ExpiredTokenReaperTest.java - Chunked deletes, the per-run cap, grace period and per-table isolation
+package com.paymentgateway.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import com.paymentgateway.repository.OtpTokenRepository;
+import com.paymentgateway.repository.PasswordResetTokenRepository;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ExpiredTokenReaperTest {
+
+    private static final int CHUNK_SIZE = 500;
+
+    // An expired-token table holding `expired` rows; records every chunk it was asked to delete
+    private static final class FakeTable {
+        long expired;
+        boolean failing;
+        final List<Integer> chunkLimits = new ArrayList<>();
+        final List<LocalDateTime> cutoffs = new ArrayList<>();
+
+        FakeTable(long expired) {
+            this.expired = expired;
+        }
+
+        <T> T repository(Class<T> type) {
+            return type.cast(Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {type},
+                    (proxy, method, args) -> switch (method.getName()) {
+                        case "deleteExpiredChunk" -> {
+                            if (failing) {
+                                throw new IllegalStateException("database unavailable");
+                            }
+                            cutoffs.add((LocalDateTime) args[0]);
+                            int limit = (Integer) args[1];
+                            chunkLimits.add(limit);
+                            int deleted = (int) Math.min(limit, expired);
+                            expired -= deleted;
+                            yield deleted;
+                        }
+                        case "countExpired" -> Math.min(expired, (long) (Integer) args[1]);
+                        case "hashCode" -> System.identityHashCode(proxy);
+                        case "equals" -> proxy == args[0];
+                        case "toString" -> "FakeTable";
+                        default -> throw new UnsupportedOperationException(method.getName());
+                    }));
+        }
+    }
+
+    private static ExpiredTokenReaper reaper(FakeTable otps, FakeTable resets, int maxChunksPerRun,
+                                             SimpleMeterRegistry registry) throws Exception {
+        ExpiredTokenReaper reaper = new ExpiredTokenReaper(otps.repository(OtpTokenRepository.class),
+                resets.repository(PasswordResetTokenRepository.class), registry);
+        // @Value fields, normally set by Spring
+        set(reaper, "enabled", true);
+        set(reaper, "chunkSize", CHUNK_SIZE);
+        set(reaper, "maxChunksPerRun", maxChunksPerRun);
+        set(reaper, "pauseMs", 0L);
+        set(reaper, "graceMs", 3_600_000L);
+        set(reaper, "backlogCap", 100_000);
+        return reaper;
+    }
+
+    private static void set(Object target, String name, Object value) throws Exception {
+        Field field = target.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(target, value);
+    }
+
+    private static double deleted(SimpleMeterRegistry registry, String table) {
+        return registry.get("token.reaper.deleted").tag("table", table).counter().count();
+    }
+
+    private static double backlog(SimpleMeterRegistry registry, String table) {
+        return registry.get("token.reaper.backlog").tag("table", table).gauge().value();
+    }
+
+    @Test
+    void deletesChunkByChunkUntilAShortChunk() throws Exception {
+        FakeTable otps = new FakeTable(2300);
+        FakeTable resets = new FakeTable(0);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+        reaper(otps, resets, 100, registry).reap();
+
+        assertEquals(List.of(500, 500, 500, 500, 500), otps.chunkLimits);
+        assertEquals(0, otps.expired);
+        assertEquals(2300, deleted(registry, "otp_tokens"));
+        assertEquals(0, backlog(registry, "otp_tokens"));
+        // An empty table costs one chunk
+        assertEquals(List.of(500), resets.chunkLimits);
+    }
+
+    @Test
+    void runStopsAtTheChunkCapAndReportsTheBacklog() throws Exception {
+        FakeTable otps = new FakeTable(10_000);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+        ExpiredTokenReaper reaper = reaper(otps, new FakeTable(0), 3, registry);
+        reaper.reap();
+
+        assertEquals(3, otps.chunkLimits.size());
+        assertEquals(8500, backlog(registry, "otp_tokens"));
+
+        // The next tick carries on where this one stopped
+        reaper.reap();
+        assertEquals(7000, backlog(registry, "otp_tokens"));
+        assertEquals(3000, deleted(registry, "otp_tokens"));
+    }
+
+    @Test
+    void cutoffLeavesTheGracePeriod() throws Exception {
+        FakeTable otps = new FakeTable(1);
+        LocalDateTime before = LocalDateTime.now().minus(Duration.ofHours(1));
+
+        reaper(otps, new FakeTable(0), 100, new SimpleMeterRegistry()).reap();
+
+        LocalDateTime after = LocalDateTime.now().minus(Duration.ofHours(1));
+        LocalDateTime cutoff = otps.cutoffs.get(0);
+        assertTrue(!cutoff.isBefore(before) && !cutoff.isAfter(after), cutoff.toString());
+    }
+
+    @Test
+    void failureOnOneTableDoesNotStopTheOther() throws Exception {
+        FakeTable otps = new FakeTable(700);
+        otps.failing = true;
+        FakeTable resets = new FakeTable(700);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+        reaper(otps, resets, 100, registry).reap();
+
+        assertEquals(700, otps.expired);
+        assertEquals(0, resets.expired);
+        assertEquals(700, deleted(registry, "password_reset_tokens"));
+    }
+}
@@ -0,0 +1,128 @@
+// ExpiringOtpStoreTest.java - Randomised differential test of ExpiringOtpStore against a HashMap model
+package com.paymentgateway.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ExpiringOtpStoreTest {
+
+    private static final long VALIDITY = OtpService.OTP_VALIDITY_DURATION;
+    private static final int OPERATIONS = 200_000;
+    // Small key space so puts, removes and consumes keep hitting the same keys and probe chains
+    private static final int KEYS = 300;
+
+    @Test
+    void matchesHashMapModel() {
+        for (long seed = 1; seed <= 5; seed++) {
+            runAgainstModel(seed);
+        }
+    }
+
+    // issuedAt only moves forward, as in production, in 10 s steps that carry the clock from
+    // long expired to fresh over the run. Grid points sit 5 s off the expiry cutoff, more than
+    // one seed takes to run, so no entry is close enough to the cutoff for timing to matter.
+    private void runAgainstModel(long seed) {
+        Random random = new Random(seed);
+        ExpiringOtpStore store = new ExpiringOtpStore(1_000_000, new SimpleMeterRegistry());
+        Map<String, Long> model = new HashMap<>();
+        long clock = System.currentTimeMillis() - 2 * VALIDITY - 5_000;
+
+        for (int op = 0; op < OPERATIONS; op++) {
+            String email = "user" + random.nextInt(KEYS) + "@example.com";
+            String context = "seed " + seed + ", op " + op + ", " + email;
+            int action = random.nextInt(100);
+            if (action < 35) {
+                if (random.nextInt(500) == 0) {
+                    clock += 10_000;
+                }
+                int code = random.nextInt(1_000_000);
+                store.put(email, code, clock);
+                model.put(email, ExpiringOtpStore.pack(code, clock));
+            } else if (action < 55) {
+                assertEquals(model.getOrDefault(email, ExpiringOtpStore.ABSENT), store.get(email), context);
+            } else if (action < 75) {
+                Long entry = model.get(email);
+                int code = entry != null && random.nextBoolean()
+                        ? ExpiringOtpStore.code(entry)
+                        : random.nextInt(1_000_000);
+                assertEquals(consumeModel(model, email, code), store.consume(email, code), context);
+            } else if (action < 85) {
+                store.remove(email);
+                model.remove(email);
+            } else if (action < 95) {
+                Long entry = model.get(email);
+                long expected = entry != null && random.nextBoolean() ? entry : ExpiringOtpStore.pack(7, clock - 1);
+                boolean removed = entry != null && entry == expected;
+                assertEquals(removed, store.remove(email, expected), context);
+                if (removed) {
+                    model.remove(email);
+                }
+            } else if (action < 97) {
+                store.sweep();
+                long cutoff = System.currentTimeMillis() - VALIDITY;
+                model.values().removeIf(entry -> ExpiringOtpStore.issuedAt(entry) < cutoff);
+            }
+            assertEquals(model.size(), store.size(), context);
+        }
+        for (Map.Entry<String, Long> entry : model.entrySet()) {
+            assertEquals(entry.getValue().longValue(), store.get(entry.getKey()), "seed " + seed);
+        }
+    }
+
+    private static OtpStore.Result consumeModel(Map<String, Long> model, String email, int code) {
+        Long entry = model.get(email);
+        if (entry == null) {
+            return OtpStore.Result.NOT_FOUND;
+        }
+        if (System.currentTimeMillis() - ExpiringOtpStore.issuedAt(entry) > VALIDITY) {
+            model.remove(email);
+            return OtpStore.Result.EXPIRED;
+        }
+        if (ExpiringOtpStore.code(entry) != code) {
+            return OtpStore.Result.INVALID;
+        }
+        model.remove(email);
+        return OtpStore.Result.VALID;
+    }
+
+    // With a tight cap the store drops entries early, but never returns a superseded code
+    @Test
+    void capacityEvictionNeverReturnsStaleCodes() {
+        Random random = new Random(42);
+        ExpiringOtpStore store = new ExpiringOtpStore(320, new SimpleMeterRegistry());
+        Map<String, Long> latest = new HashMap<>();
+        long now = System.currentTimeMillis();
+
+        for (int op = 0; op < 100_000; op++) {
+            String email = "user" + random.nextInt(5_000) + "@example.com";
+            if (random.nextBoolean()) {
+                int code = random.nextInt(1_000_000);
+                store.put(email, code, now);
+                latest.put(email, ExpiringOtpStore.pack(code, now));
+            } else {
+                long entry = store.get(email);
+                if (entry != ExpiringOtpStore.ABSENT) {
+                    assertEquals(latest.get(email).longValue(), entry, "op " + op);
+                }
+            }
+            assertTrue(store.size() <= 320, "size " + store.size() + " at op " + op);
+        }
+    }
+
+    @Test
+    void packRoundTrips() {
+        long issuedAt = System.currentTimeMillis();
+        for (int code : new int[] {0, 1, 42, 999_999}) {
+            long entry = ExpiringOtpStore.pack(code, issuedAt);
+            assertEquals(code, ExpiringOtpStore.code(entry));
+            assertEquals(issuedAt, ExpiringOtpStore.issuedAt(entry));
+        }
+    }
+}
@@ -0,0 +1,113 @@
+// OtpAttemptLimiterTest.java - Reservation, refund and lockout behaviour of OtpAttemptLimiter
+package com.paymentgateway.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OtpAttemptLimiterTest {
+
+    private static final int EMAIL_MAX = 5;
+    private static final int IP_MAX = 50;
+
+    private OtpAttemptLimiter newLimiter() {
+        // Hour-long window, so the sliding estimate does not decay noticeably during a test
+        return new OtpAttemptLimiter(4096, 3_600_000, EMAIL_MAX, IP_MAX, 900_000, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void concurrentBurstIsCappedAtTheLimit() throws Exception {
+        OtpAttemptLimiter limiter = newLimiter();
+        int threads = 64;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            String ip = "10.0.0." + i;
+            results.add(pool.submit(() -> {
+                start.await();
+                return limiter.tryAcquire("victim@example.com", ip).isAllowed();
+            }));
+        }
+        start.countDown();
+        int allowed = 0;
+        for (Future<Boolean> result : results) {
+            if (result.get()) {
+                allowed++;
+            }
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+        assertTrue(allowed <= EMAIL_MAX, "allowed " + allowed);
+        assertTrue(allowed > 0);
+    }
+
+    @Test
+    void failuresLockTheEmailOut() {
+        OtpAttemptLimiter limiter = newLimiter();
+        for (int i = 0; i < EMAIL_MAX; i++) {
+            OtpAttemptLimiter.Attempt attempt = limiter.tryAcquire("user@example.com", "10.0.0.1");
+            assertTrue(attempt.isAllowed(), "attempt " + i);
+            limiter.recordFailure(attempt);
+        }
+        OtpAttemptLimiter.Attempt blocked = limiter.tryAcquire("USER@example.com ", "10.0.0.2");
+        assertFalse(blocked.isAllowed());
+        assertTrue(blocked.getRetryAfterMs() > 0);
+    }
+
+    @Test
+    void successRefundsOnlyItsOwnAttempt() {
+        OtpAttemptLimiter limiter = newLimiter();
+        for (int i = 0; i < EMAIL_MAX - 1; i++) {
+            limiter.recordFailure(limiter.tryAcquire("user@example.com", "10.0.0.1"));
+        }
+        // Successes never use up the allowance
+        for (int i = 0; i < 3 * EMAIL_MAX; i++) {
+            OtpAttemptLimiter.Attempt attempt = limiter.tryAcquire("user@example.com", "10.0.0.1");
+            assertTrue(attempt.isAllowed(), "success " + i);
+            limiter.recordSuccess(attempt);
+        }
+        // ...and do not wipe the failures that came before them
+        OtpAttemptLimiter.Attempt last = limiter.tryAcquire("user@example.com", "10.0.0.1");
+        assertTrue(last.isAllowed());
+        limiter.recordFailure(last);
+        assertFalse(limiter.tryAcquire("user@example.com", "10.0.0.1").isAllowed());
+    }
+
+    @Test
+    void ipLimitAppliesAcrossEmails() {
+        OtpAttemptLimiter limiter = newLimiter();
+        int allowed = 0;
+        for (int i = 0; i < 2 * IP_MAX; i++) {
+            OtpAttemptLimiter.Attempt attempt = limiter.tryAcquire("user" + i + "@example.com", "10.9.9.9");
+            if (attempt.isAllowed()) {
+                allowed++;
+                limiter.recordFailure(attempt);
+            }
+        }
+        assertEquals(IP_MAX, allowed);
+    }
+
+    @Test
+    void rejectedIpDoesNotChargeTheEmail() {
+        OtpAttemptLimiter limiter = newLimiter();
+        for (int i = 0; i < IP_MAX; i++) {
+            limiter.recordFailure(limiter.tryAcquire("spray" + i + "@example.com", "10.9.9.9"));
+        }
+        for (int i = 0; i < 3 * EMAIL_MAX; i++) {
+            assertFalse(limiter.tryAcquire("user@example.com", "10.9.9.9").isAllowed());
+        }
+        assertTrue(limiter.tryAcquire("user@example.com", "10.0.0.1").isAllowed());
+    }
+}
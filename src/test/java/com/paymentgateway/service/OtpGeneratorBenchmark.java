@@ -0,0 +1,66 @@
+// OtpGeneratorBenchmark.java - OtpGenerator vs the shared java.util.Random + String.format it replaced, 1 to N threads
+package com.paymentgateway.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.security.SecureRandom;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Run with: mvn test-compile exec:java -Dexec.classpathScope=test
+//               -Dexec.mainClass=com.paymentgateway.service.OtpGeneratorBenchmark
+// main() repeats every benchmark at 1, 2, 4, ... threads up to the core count. All state is
+// shared between the threads, as the OtpService bean and its fields are.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OtpGeneratorBenchmark {
+
+    private final Random random = new Random();
+    private final SecureRandom secureRandom = new SecureRandom();
+    private final OtpGenerator generator = new OtpGenerator(64);
+
+    // What OtpService did before OtpGenerator
+    @Benchmark
+    public String legacyRandomFormat() {
+        return String.format("%06d", random.nextInt(999999));
+    }
+
+    // Strong but shared source, to separate the cost of SecureRandom contention from formatting
+    @Benchmark
+    public String sharedSecureRandomFormat() {
+        return String.format("%06d", secureRandom.nextInt(1_000_000));
+    }
+
+    @Benchmark
+    public String otpGenerator() {
+        return generator.nextOtp();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; ; threads = Math.min(threads * 2, cores)) {
+            new Runner(new OptionsBuilder()
+                    .include(OtpGeneratorBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .build()).run();
+            if (threads == cores) {
+                break;
+            }
+        }
+    }
+}
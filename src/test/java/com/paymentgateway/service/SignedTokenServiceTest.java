@@ -0,0 +1,95 @@
+// SignedTokenServiceTest.java - Issue/verify round trip and rejection of tampered, misdirected and expired tokens
+package com.paymentgateway.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Base64;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SignedTokenServiceTest {
+
+    private static final String SECRET = "test-signing-secret-0123456789abcdef";
+    private static final String EMAIL = "Ann.Lee@Example.com";
+
+    private static SignedTokenService service(long resetTtlMinutes) {
+        return new SignedTokenService(true, SECRET, 1440, resetTtlMinutes);
+    }
+
+    @Test
+    void issuedTokenVerifiesWithItsClaims() {
+        SignedTokenService service = service(10);
+        String token = service.issue(SignedTokenService.Purpose.PASSWORD_RESET, 42L, 3, EMAIL);
+
+        assertTrue(service.isSignedToken(token));
+        Optional<SignedTokenService.Claims> claims =
+                service.verify(token, SignedTokenService.Purpose.PASSWORD_RESET, EMAIL);
+        assertTrue(claims.isPresent());
+        assertEquals(42L, claims.get().userId());
+        assertEquals(3, claims.get().tokenVersion());
+        assertEquals(SignedTokenService.Purpose.PASSWORD_RESET, claims.get().purpose());
+    }
+
+    @Test
+    void emailIsComparedInNormalisedForm() {
+        SignedTokenService service = service(10);
+        String token = service.issue(SignedTokenService.Purpose.ACTIVATION, 1L, 0, EMAIL);
+
+        assertTrue(service.verify(token, SignedTokenService.Purpose.ACTIVATION, "ann.lee@example.com").isPresent());
+        assertFalse(service.verify(token, SignedTokenService.Purpose.ACTIVATION, "bob@example.com").isPresent());
+        assertFalse(service.verify(token, SignedTokenService.Purpose.ACTIVATION, null).isPresent());
+    }
+
+    @Test
+    void tokenForAnotherPurposeIsRejected() {
+        SignedTokenService service = service(10);
+        String token = service.issue(SignedTokenService.Purpose.ACTIVATION, 1L, 0, EMAIL);
+
+        assertFalse(service.verify(token, SignedTokenService.Purpose.PASSWORD_RESET, EMAIL).isPresent());
+    }
+
+    @Test
+    void everyFlippedBitIsRejected() {
+        SignedTokenService service = service(10);
+        String token = service.issue(SignedTokenService.Purpose.PASSWORD_RESET, 42L, 3, EMAIL);
+        byte[] raw = Base64.getUrlDecoder().decode(token);
+
+        for (int bit = 0; bit < raw.length * 8; bit++) {
+            byte[] tampered = raw.clone();
+            tampered[bit / 8] ^= (byte) (1 << (bit % 8));
+            String forged = Base64.getUrlEncoder().withoutPadding().encodeToString(tampered);
+            assertFalse(service.verify(forged, SignedTokenService.Purpose.PASSWORD_RESET, EMAIL).isPresent(),
+                    "bit " + bit);
+        }
+    }
+
+    @Test
+    void tokenFromAnotherKeyIsRejected() {
+        String token = new SignedTokenService(true, "some-other-secret", 1440, 10)
+                .issue(SignedTokenService.Purpose.PASSWORD_RESET, 42L, 3, EMAIL);
+
+        assertFalse(service(10).verify(token, SignedTokenService.Purpose.PASSWORD_RESET, EMAIL).isPresent());
+    }
+
+    @Test
+    void expiredTokenIsRejected() {
+        // A zero TTL expires the token as it is issued
+        SignedTokenService service = service(0);
+        String token = service.issue(SignedTokenService.Purpose.PASSWORD_RESET, 42L, 3, EMAIL);
+
+        assertFalse(service.verify(token, SignedTokenService.Purpose.PASSWORD_RESET, EMAIL).isPresent());
+    }
+
+    @Test
+    void malformedInputIsRejected() {
+        SignedTokenService service = service(10);
+
+        assertFalse(service.isSignedToken("ABCD2345"));
+        assertFalse(service.verify(null, SignedTokenService.Purpose.ACTIVATION, EMAIL).isPresent());
+        assertFalse(service.verify("ABCD2345", SignedTokenService.Purpose.ACTIVATION, EMAIL).isPresent());
+        assertFalse(service.verify("!".repeat(51), SignedTokenService.Purpose.ACTIVATION, EMAIL).isPresent());
+    }
+}
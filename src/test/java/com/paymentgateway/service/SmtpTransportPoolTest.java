@@ -0,0 +1,249 @@
+// SmtpTransportPoolTest.java - Connection reuse, rotation, health checks and idle eviction against an in-process SMTP sink
+package com.paymentgateway.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+import jakarta.mail.internet.MimeMessage;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SmtpTransportPoolTest {
+
+    // Minimal SMTP server: accepts every command, counts connections, messages and QUITs
+    private static final class SmtpSink implements AutoCloseable {
+        final ServerSocket server;
+        final AtomicInteger connections = new AtomicInteger();
+        final AtomicInteger messages = new AtomicInteger();
+        final AtomicInteger quits = new AtomicInteger();
+        final List<Socket> sockets = new CopyOnWriteArrayList<>();
+
+        SmtpSink() throws IOException {
+            server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+            Thread acceptor = new Thread(this::accept, "smtp-sink");
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+
+        int port() {
+            return server.getLocalPort();
+        }
+
+        // Drops every open connection without a goodbye, as a server restart or idle cut-off would
+        void dropConnections() throws IOException {
+            for (Socket socket : sockets) {
+                socket.close();
+            }
+        }
+
+        private void accept() {
+            while (!server.isClosed()) {
+                try {
+                    Socket socket = server.accept();
+                    connections.incrementAndGet();
+                    sockets.add(socket);
+                    Thread session = new Thread(() -> serve(socket), "smtp-sink-session");
+                    session.setDaemon(true);
+                    session.start();
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        }
+
+        private void serve(Socket socket) {
+            try (socket;
+                 BufferedReader in = new BufferedReader(
+                         new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+                 OutputStream out = socket.getOutputStream()) {
+                reply(out, "220 sink ESMTP");
+                String line;
+                while ((line = in.readLine()) != null) {
+                    String command = line.length() >= 4 ? line.substring(0, 4).toUpperCase() : line.toUpperCase();
+                    switch (command) {
+                        case "DATA":
+                            reply(out, "354 End data with <CR><LF>.<CR><LF>");
+                            while ((line = in.readLine()) != null && !line.equals(".")) {
+                                // Message body is discarded
+                            }
+                            messages.incrementAndGet();
+                            reply(out, "250 Queued");
+                            break;
+                        case "QUIT":
+                            quits.incrementAndGet();
+                            reply(out, "221 Bye");
+                            return;
+                        default:
+                            // EHLO, HELO, MAIL, RCPT, RSET and NOOP
+                            reply(out, "250 OK");
+                    }
+                }
+            } catch (IOException e) {
+                // Client or test dropped the connection
+            }
+        }
+
+        private static void reply(OutputStream out, String line) throws IOException {
+            out.write((line + "\r\n").getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            server.close();
+            dropConnections();
+        }
+    }
+
+    private SmtpSink sink;
+    private JavaMailSenderImpl sender;
+    private SmtpTransportPool pool;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        sink = new SmtpSink();
+        sender = new JavaMailSenderImpl();
+        sender.setHost("127.0.0.1");
+        sender.setPort(sink.port());
+        Properties properties = new Properties();
+        properties.setProperty("mail.smtp.connectiontimeout", "2000");
+        properties.setProperty("mail.smtp.timeout", "2000");
+        sender.setJavaMailProperties(properties);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (pool != null) {
+            pool.destroy();
+        }
+        sink.close();
+    }
+
+    private SmtpTransportPool pool(int maxMessagesPerConnection, long idleTimeoutMs, long validateAfterIdleMs)
+            throws Exception {
+        SmtpTransportPool pool = new SmtpTransportPool();
+        set(pool, "mailSender", sender);
+        // @Value fields, normally set by Spring
+        set(pool, "maxConnections", 2);
+        set(pool, "idleTimeoutMs", idleTimeoutMs);
+        set(pool, "maxMessagesPerConnection", maxMessagesPerConnection);
+        set(pool, "validateAfterIdleMs", validateAfterIdleMs);
+        set(pool, "borrowTimeoutMs", 2000L);
+        pool.init();
+        return pool;
+    }
+
+    private static void set(Object target, String name, Object value) throws Exception {
+        Field field = target.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(target, value);
+    }
+
+    private void send(int count) throws Exception {
+        for (int i = 0; i < count; i++) {
+            MimeMessage message = sender.createMimeMessage();
+            message.setFrom("noreply@example.com");
+            message.setRecipients(MimeMessage.RecipientType.TO, "user" + i + "@example.com");
+            message.setSubject("Test " + i);
+            message.setText("Hello");
+            pool.send(message);
+        }
+    }
+
+    // Session threads count a DATA or QUIT just after replying, so give them a moment
+    private static void awaitCount(AtomicInteger counter, int expected) throws InterruptedException {
+        for (int i = 0; i < 100 && counter.get() < expected; i++) {
+            Thread.sleep(20);
+        }
+        assertEquals(expected, counter.get());
+    }
+
+    @Test
+    void returnedConnectionIsReusedBySequentialSends() throws Exception {
+        pool = pool(100, 60_000, 5_000);
+
+        send(3);
+
+        assertEquals(1, pool.getConnectionsOpened());
+        assertEquals(1, sink.connections.get());
+        assertEquals(1, pool.getIdleConnections());
+        assertEquals(3, pool.getMessagesSent());
+        awaitCount(sink.messages, 3);
+    }
+
+    @Test
+    void connectionIsRotatedAfterMaxMessages() throws Exception {
+        pool = pool(2, 60_000, 5_000);
+
+        send(5);
+
+        // 2 + 2 + 1: the first two connections are closed with QUIT once they hit the cap
+        assertEquals(3, pool.getConnectionsOpened());
+        assertEquals(1, pool.getIdleConnections());
+        awaitCount(sink.messages, 5);
+        awaitCount(sink.quits, 2);
+    }
+
+    @Test
+    void deadConnectionFailsItsHealthCheckAndIsReplaced() throws Exception {
+        // Validate on every reuse
+        pool = pool(100, 60_000, 0);
+        send(1);
+        awaitCount(sink.messages, 1);
+
+        sink.dropConnections();
+        Thread.sleep(20);
+        send(1);
+
+        assertEquals(2, pool.getConnectionsOpened());
+        assertEquals(2, sink.connections.get());
+        awaitCount(sink.messages, 2);
+    }
+
+    @Test
+    void scheduledEvictionClosesConnectionsIdlePastTheTimeout() throws Exception {
+        pool = pool(100, 100, 5_000);
+        send(1);
+        assertEquals(1, pool.getIdleConnections());
+
+        // Still fresh: left alone
+        pool.evictIdleConnections();
+        assertEquals(1, pool.getIdleConnections());
+
+        Thread.sleep(200);
+        pool.evictIdleConnections();
+
+        assertEquals(0, pool.getIdleConnections());
+        awaitCount(sink.quits, 1);
+    }
+
+    @Test
+    void connectionIdlePastTheTimeoutIsNotReused() throws Exception {
+        pool = pool(100, 100, 5_000);
+        send(1);
+
+        Thread.sleep(200);
+        send(1);
+
+        assertEquals(2, pool.getConnectionsOpened());
+        awaitCount(sink.quits, 1);
+        awaitCount(sink.messages, 2);
+    }
+}
@@ -0,0 +1,68 @@
+// TokenGeneratorBenchmark.java - TokenGenerator vs the UUID-based reset codes and activation tokens it replaced, 1 to N threads
+package com.paymentgateway.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// Run with: mvn test-compile exec:java -Dexec.classpathScope=test
+//               -Dexec.mainClass=com.paymentgateway.service.TokenGeneratorBenchmark
+// main() repeats every benchmark at 1, 2, 4, ... threads up to the core count. UUID.randomUUID()
+// draws from one shared SecureRandom, so the legacy rows show how it scales under contention.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenGeneratorBenchmark {
+
+    private final TokenGenerator generator = new TokenGenerator(TokenGenerator.Alphabet.CROCKFORD32, 8, 26);
+
+    // What PasswordResetService.generateToken did before TokenGenerator
+    @Benchmark
+    public String legacyResetCode() {
+        return UUID.randomUUID().toString().replace("-", "").substring(0, 8).toUpperCase();
+    }
+
+    @Benchmark
+    public String resetCode() {
+        return generator.resetCode();
+    }
+
+    // What UserService.registerUser stored as the activation token
+    @Benchmark
+    public String legacyActivationToken() {
+        return UUID.randomUUID().toString();
+    }
+
+    @Benchmark
+    public String activationToken() {
+        return generator.activationToken();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; ; threads = Math.min(threads * 2, cores)) {
+            new Runner(new OptionsBuilder()
+                    .include(TokenGeneratorBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .build()).run();
+            if (threads == cores) {
+                break;
+            }
+        }
+    }
+}
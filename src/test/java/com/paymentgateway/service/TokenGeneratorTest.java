@@ -0,0 +1,108 @@
+// TokenGeneratorTest.java - Lengths, alphabet, uniform symbol distribution and code normalisation of TokenGenerator
+package com.paymentgateway.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TokenGeneratorTest {
+
+    private static final String CROCKFORD = "0123456789ABCDEFGHJKMNPQRSTVWXYZ";
+    private static final String BASE62 = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+
+    @Test
+    void tokensHaveTheConfiguredLengthsAndAlphabet() {
+        TokenGenerator generator = new TokenGenerator(TokenGenerator.Alphabet.CROCKFORD32, 8, 26);
+        for (int i = 0; i < 1000; i++) {
+            String code = generator.resetCode();
+            String token = generator.activationToken();
+            assertEquals(8, code.length());
+            assertEquals(26, token.length());
+            for (char c : (code + token).toCharArray()) {
+                assertTrue(CROCKFORD.indexOf(c) >= 0, "unexpected symbol " + c);
+            }
+        }
+    }
+
+    // Chi-squared over the symbol counts; rejection sampling must leave no symbol favoured
+    private static void assertUniform(TokenGenerator generator, String alphabet) {
+        int samples = 400_000;
+        int[] counts = new int[alphabet.length()];
+        String drawn = generator.generate(samples);
+        for (int i = 0; i < samples; i++) {
+            int index = alphabet.indexOf(drawn.charAt(i));
+            assertTrue(index >= 0, "unexpected symbol " + drawn.charAt(i));
+            counts[index]++;
+        }
+        double expected = (double) samples / alphabet.length();
+        double chiSquared = 0;
+        for (int count : counts) {
+            chiSquared += (count - expected) * (count - expected) / expected;
+        }
+        // Well above the 99.99th percentile for 31 or 61 degrees of freedom (~66 and ~107),
+        // while a mod-62 bias over the 64 byte values would land in the thousands
+        assertTrue(chiSquared < 3.0 * alphabet.length(), "chi-squared " + chiSquared);
+    }
+
+    @Test
+    void crockfordSymbolsAreUniform() {
+        assertUniform(new TokenGenerator(TokenGenerator.Alphabet.CROCKFORD32, 8, 26), CROCKFORD);
+    }
+
+    @Test
+    void base62SymbolsAreUniform() {
+        // 62 is not a power of two, so this is the case a modulo would bias
+        assertUniform(new TokenGenerator(TokenGenerator.Alphabet.BASE62, 8, 26), BASE62);
+    }
+
+    @Test
+    void activationTokensDoNotRepeatAcrossThreads() throws Exception {
+        TokenGenerator generator = new TokenGenerator(TokenGenerator.Alphabet.CROCKFORD32, 8, 26);
+        Set<String> tokens = ConcurrentHashMap.newKeySet();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 25_000; i++) {
+                    tokens.add(generator.activationToken());
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(100_000, tokens.size());
+    }
+
+    @Test
+    void crockfordCodesAreNormalisedAsTyped() {
+        TokenGenerator generator = new TokenGenerator(TokenGenerator.Alphabet.CROCKFORD32, 8, 26);
+        assertEquals("0A1B1C1D", generator.normalize("oa1bIcLd"));
+        assertEquals("ABCD2345", generator.normalize("abcd2345"));
+        assertNull(generator.normalize(null));
+    }
+
+    @Test
+    void base62CodesAreLeftAlone() {
+        TokenGenerator generator = new TokenGenerator(TokenGenerator.Alphabet.BASE62, 8, 26);
+        assertEquals("oa1bIcLd", generator.normalize("oa1bIcLd"));
+    }
+
+    @Test
+    void generatedCodesRoundTripThroughNormalize() {
+        TokenGenerator generator = new TokenGenerator(TokenGenerator.Alphabet.CROCKFORD32, 8, 26);
+        Set<String> seen = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            String code = generator.resetCode();
+            seen.add(code);
+            assertEquals(code, generator.normalize(code.toLowerCase()));
+        }
+        assertTrue(seen.size() > 990);
+    }
+}
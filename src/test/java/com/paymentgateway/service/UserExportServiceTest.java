@@ -0,0 +1,36 @@
+// UserExportServiceTest.java - CSV cell quoting and formula neutralising in the user export
+package com.paymentgateway.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class UserExportServiceTest {
+
+    @Test
+    void plainValuesAreWrittenAsIs() {
+        assertEquals("ann@example.com", UserExportService.csv("ann@example.com"));
+        assertEquals("", UserExportService.csv(""));
+        assertEquals("", UserExportService.csv(null));
+    }
+
+    @Test
+    void separatorsQuotesAndLineBreaksAreQuoted() {
+        assertEquals("\"Lee, Ann\"", UserExportService.csv("Lee, Ann"));
+        assertEquals("\"say \"\"hi\"\"\"", UserExportService.csv("say \"hi\""));
+        assertEquals("\"two\nlines\"", UserExportService.csv("two\nlines"));
+        assertEquals("\"cr\rhere\"", UserExportService.csv("cr\rhere"));
+    }
+
+    @Test
+    void formulaPrefixesAreNeutralised() {
+        assertEquals("'=1+1", UserExportService.csv("=1+1"));
+        assertEquals("'+1", UserExportService.csv("+1"));
+        assertEquals("'-1", UserExportService.csv("-1"));
+        assertEquals("'@SUM(A1)", UserExportService.csv("@SUM(A1)"));
+        assertEquals("'\tx", UserExportService.csv("\tx"));
+        // Neutralised first, then quoted because of the comma
+        assertEquals("\"'=HYPERLINK(\"\"http://x\"\", \"\"y\"\")\"",
+                UserExportService.csv("=HYPERLINK(\"http://x\", \"y\")"));
+    }
+}
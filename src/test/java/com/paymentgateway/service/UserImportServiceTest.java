@@ -0,0 +1,386 @@
+// UserImportServiceTest.java - CSV line parsing and row handling of the bulk import, against an in-memory users table
+package com.paymentgateway.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import com.paymentgateway.dto.UserImportReport;
+
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import javax.sql.DataSource;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UserImportServiceTest {
+
+    // users table stand-in for the three statements the import issues: the existing-email
+    // lookup, the nextval() id reservation and the batched INSERT ... ON CONFLICT DO NOTHING
+    private static final class FakeUsersJdbc extends JdbcTemplate {
+        // email_normalized values visible to the existing-email lookup
+        final Set<String> stored = new HashSet<>();
+        // Committed by a concurrent registration after the lookup: the INSERT conflicts on them
+        final Set<String> insertedConcurrently = new HashSet<>();
+        final List<Object[]> inserted = new ArrayList<>();
+        final List<Integer> batchSizes = new ArrayList<>();
+        RuntimeException failInsert;
+        long nextId = 100;
+
+        FakeUsersJdbc() {
+            // EmailBloomFilter builds its own template from this; it is never used while disabled
+            setDataSource(unsupported(DataSource.class));
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> List<T> query(PreparedStatementCreator creator, RowMapper<T> rowMapper) {
+            List<Object> keys = new ArrayList<>();
+            Connection connection = (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class<?>[] {Connection.class}, (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "createArrayOf":
+                                keys.addAll(Arrays.asList((Object[]) args[1]));
+                                return unsupported(Array.class);
+                            case "prepareStatement":
+                                return Proxy.newProxyInstance(getClass().getClassLoader(),
+                                        new Class<?>[] {PreparedStatement.class}, (p, m, a) -> null);
+                            default:
+                                throw new UnsupportedOperationException(method.getName());
+                        }
+                    });
+            try {
+                creator.createPreparedStatement(connection);
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+            return (List<T>) keys.stream().filter(stored::contains).collect(Collectors.toList());
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> List<T> queryForList(String sql, Class<T> elementType, Object... args) {
+            List<Long> ids = new ArrayList<>();
+            for (int i = 0; i < (Integer) args[0]; i++) {
+                ids.add(nextId++);
+            }
+            return (List<T>) ids;
+        }
+
+        @Override
+        public int[] batchUpdate(String sql, List<Object[]> batchArgs) {
+            if (failInsert != null) {
+                throw failInsert;
+            }
+            batchSizes.add(batchArgs.size());
+            int[] counts = new int[batchArgs.size()];
+            for (int i = 0; i < batchArgs.size(); i++) {
+                String normalized = (String) batchArgs.get(i)[2];
+                if (stored.contains(normalized) || insertedConcurrently.contains(normalized)) {
+                    counts[i] = 0;
+                } else {
+                    stored.add(normalized);
+                    inserted.add(batchArgs.get(i));
+                    counts[i] = 1;
+                }
+            }
+            return counts;
+        }
+
+        private static <T> T unsupported(Class<T> type) {
+            return type.cast(Proxy.newProxyInstance(FakeUsersJdbc.class.getClassLoader(), new Class<?>[] {type},
+                    (proxy, method, args) -> {
+                        throw new UnsupportedOperationException(method.getName());
+                    }));
+        }
+    }
+
+    private static final class NoOpTransactionManager implements PlatformTransactionManager {
+        @Override
+        public TransactionStatus getTransaction(TransactionDefinition definition) {
+            return new SimpleTransactionStatus();
+        }
+
+        @Override
+        public void commit(TransactionStatus status) {
+        }
+
+        @Override
+        public void rollback(TransactionStatus status) {
+        }
+    }
+
+    // Cheap stand-in for BCrypt; the hashing pool path is covered by BoundedPasswordEncoderTest
+    private static final PasswordEncoder PREFIX_ENCODER = new PasswordEncoder() {
+        @Override
+        public String encode(CharSequence rawPassword) {
+            return "hashed:" + rawPassword;
+        }
+
+        @Override
+        public boolean matches(CharSequence rawPassword, String encodedPassword) {
+            return encode(rawPassword).equals(encodedPassword);
+        }
+    };
+
+    private FakeUsersJdbc jdbc;
+    private UserImportService service;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        jdbc = new FakeUsersJdbc();
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        EmailBloomFilter bloomFilter = new EmailBloomFilter(jdbc, new NoOpTransactionManager(), registry,
+                false, 1000, 0.01, 100, 0, 0);
+        service = new UserImportService(jdbc, new NoOpTransactionManager(), PREFIX_ENCODER, bloomFilter,
+                new ObjectMapper(), registry);
+        // @Value fields, normally set by Spring
+        set(service, "batchSize", 2);
+        set(service, "hashWindow", 4);
+        set(service, "maxErrors", 1000);
+        set(service, "defaultActive", true);
+        set(service, "allowedRoles", Set.of("USER"));
+    }
+
+    private static void set(Object target, String name, Object value) throws Exception {
+        Field field = target.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(target, value);
+    }
+
+    private UserImportReport importText(UserImportService.Format format, String... lines) throws Exception {
+        byte[] body = String.join("\n", lines).getBytes(StandardCharsets.UTF_8);
+        return service.importUsers(new ByteArrayInputStream(body), format);
+    }
+
+    private static List<String> reasons(UserImportReport report) {
+        return report.errors().stream().map(e -> e.line() + " " + e.reason()).collect(Collectors.toList());
+    }
+
+    @Test
+    void csvRowsAreInsertedInBatchesWithReservedIds() throws Exception {
+        UserImportReport report = importText(UserImportService.Format.CSV,
+                "email,password,first_name,last_name,active",
+                "Ann@Example.com,secret123,Ann,Lee,false",
+                "bob@example.com,secret123,Bob,Ray,",
+                "cy@example.com,\"pass,word\",Cy,\"O'Neil, Jr.\",true");
+
+        assertEquals(3, report.totalRows());
+        assertEquals(3, report.imported());
+        assertEquals(0, report.duplicates() + report.failed());
+        // batch-size 2: one full chunk, then the remainder
+        assertEquals(List.of(2, 1), jdbc.batchSizes);
+        Object[] ann = jdbc.inserted.get(0);
+        assertEquals(100L, ann[0]);
+        assertEquals("Ann@Example.com", ann[1]);
+        assertEquals("ann@example.com", ann[2]);
+        assertEquals("hashed:secret123", ann[3]);
+        assertEquals(false, ann[6]);
+        assertEquals("USER", ann[7]);
+        // A blank active column takes app.users.import.default-active
+        assertEquals(true, jdbc.inserted.get(1)[6]);
+        assertEquals("hashed:pass,word", jdbc.inserted.get(2)[3]);
+        assertEquals("O'Neil, Jr.", jdbc.inserted.get(2)[5]);
+    }
+
+    @Test
+    void ndjsonRowsAcceptCamelCaseFields() throws Exception {
+        UserImportReport report = importText(UserImportService.Format.NDJSON,
+                "{\"email\":\"ann@example.com\",\"password\":\"secret123\",\"firstName\":\"Ann\",\"lastName\":\"Lee\"}",
+                "",
+                "{\"email\":\"bob@example.com\",\"password\":\"secret123\",\"firstName\":\"Bob\"," +
+                        "\"lastName\":\"Ray\",\"role\":\"user\",\"active\":false}",
+                "not json",
+                "[1, 2]");
+
+        assertEquals(4, report.totalRows());
+        assertEquals(2, report.imported());
+        assertEquals(2, report.failed());
+        assertEquals("USER", jdbc.inserted.get(1)[7]);
+        assertEquals(false, jdbc.inserted.get(1)[6]);
+        // Blank lines are skipped but still counted for line numbers
+        List<String> reasons = reasons(report);
+        assertTrue(reasons.get(0).startsWith("4 Unparseable row"), reasons.get(0));
+        assertEquals("5 Unparseable row: expected a JSON object", reasons.get(1));
+    }
+
+    @Test
+    void repeatsWithinTheFileAreDuplicatesAfterNormalisation() throws Exception {
+        UserImportReport report = importText(UserImportService.Format.CSV,
+                "email,password,first_name,last_name",
+                "ann@example.com,secret123,Ann,Lee",
+                "ANN@example.com,secret456,Ann,Lee",
+                "bob@example.com,secret123,Bob,Ray",
+                "ann@example.com,secret789,Ann,Lee");
+
+        assertEquals(4, report.totalRows());
+        assertEquals(2, report.imported());
+        assertEquals(2, report.duplicates());
+        assertEquals(0, report.failed());
+        assertEquals(List.of("3 Duplicate email earlier in this file", "5 Duplicate email earlier in this file"),
+                reasons(report));
+        assertEquals(2, jdbc.inserted.size());
+    }
+
+    @Test
+    void addressesAlreadyStoredAreDuplicatesAndNeverHashedOrInserted() throws Exception {
+        jdbc.stored.add("bob@example.com");
+
+        UserImportReport report = importText(UserImportService.Format.CSV,
+                "email,password,first_name,last_name",
+                "ann@example.com,secret123,Ann,Lee",
+                "Bob@Example.com,secret123,Bob,Ray");
+
+        assertEquals(1, report.imported());
+        assertEquals(1, report.duplicates());
+        assertEquals(List.of("3 User already exists"), reasons(report));
+        assertEquals(List.of(1), jdbc.batchSizes);
+        // Only Ann consumed an id
+        assertEquals(101, jdbc.nextId);
+    }
+
+    @Test
+    void rowsTheInsertSkipsOnConflictAreCountedAsDuplicates() throws Exception {
+        // Registered between the existing-email lookup and the INSERT
+        jdbc.insertedConcurrently.add("bob@example.com");
+
+        UserImportReport report = importText(UserImportService.Format.CSV,
+                "email,password,first_name,last_name",
+                "ann@example.com,secret123,Ann,Lee",
+                "bob@example.com,secret123,Bob,Ray",
+                "cy@example.com,secret123,Cy,Fox");
+
+        assertEquals(3, report.totalRows());
+        assertEquals(2, report.imported());
+        assertEquals(1, report.duplicates());
+        assertEquals(0, report.failed());
+        assertEquals(List.of("3 User already exists"), reasons(report));
+    }
+
+    @Test
+    void onlyAllowedRolesCanBeImported() throws Exception {
+        UserImportReport report = importText(UserImportService.Format.CSV,
+                "email,password,first_name,last_name,role",
+                "ann@example.com,secret123,Ann,Lee,admin",
+                "bob@example.com,secret123,Bob,Ray,user",
+                "cy@example.com,secret123,Cy,Fox,");
+
+        assertEquals(2, report.imported());
+        assertEquals(List.of("2 Role not allowed for import: ADMIN"), reasons(report));
+        assertFalse(jdbc.stored.contains("ann@example.com"));
+
+        set(service, "allowedRoles", Set.of("USER", "ADMIN"));
+        UserImportReport widened = importText(UserImportService.Format.CSV,
+                "email,password,first_name,last_name,role",
+                "ann@example.com,secret123,Ann,Lee,admin");
+        assertEquals(1, widened.imported());
+    }
+
+    @Test
+    void invalidRowsAreReportedWithTheirLineAndReason() throws Exception {
+        UserImportReport report = importText(UserImportService.Format.CSV,
+                "email,password,first_name,last_name",
+                "not-an-email,secret123,Ann,Lee",
+                "ann@example.com,short,Ann,Lee",
+                "bob@example.com," + "x".repeat(73) + ",Bob,Ray",
+                "cy@example.com,secret123,,Fox",
+                "dee@example.com,\"secret123,Dee,Lin",
+                "eve@example.com,secret123,Eve,Ng");
+
+        assertEquals(6, report.totalRows());
+        assertEquals(1, report.imported());
+        assertEquals(5, report.failed());
+        assertEquals(List.of(
+                "2 Invalid email",
+                "3 Password must be at least 8 characters",
+                "4 Password longer than 72 bytes",
+                "5 First and last name are required",
+                "6 Unparseable row: unterminated quoted field"), reasons(report));
+        assertEquals("not-an-email", report.errors().get(0).email());
+        assertFalse(report.errorsTruncated());
+    }
+
+    @Test
+    void failedChunkIsReportedAgainstItsRowsAndTheImportCarriesOn() throws Exception {
+        jdbc.stored.add("bob@example.com");
+        jdbc.failInsert = new IllegalStateException("connection reset");
+
+        UserImportReport report = importText(UserImportService.Format.CSV,
+                "email,password,first_name,last_name",
+                "ann@example.com,secret123,Ann,Lee",
+                "bob@example.com,secret123,Bob,Ray",
+                "cy@example.com,secret123,Cy,Fox");
+
+        assertEquals(0, report.imported());
+        assertEquals(1, report.duplicates());
+        assertEquals(2, report.failed());
+        // Bob was already settled as a duplicate before the insert failed
+        assertEquals(List.of("3 User already exists", "2 Chunk failed: connection reset",
+                "4 Chunk failed: connection reset"), reasons(report));
+    }
+
+    @Test
+    void errorListIsCappedAtMaxErrors() throws Exception {
+        set(service, "maxErrors", 2);
+
+        UserImportReport report = importText(UserImportService.Format.CSV,
+                "email,password,first_name,last_name",
+                "a,secret123,Ann,Lee",
+                "b,secret123,Ann,Lee",
+                "c,secret123,Ann,Lee");
+
+        assertEquals(3, report.failed());
+        assertEquals(2, report.errors().size());
+        assertTrue(report.errorsTruncated());
+    }
+
+    @Test
+    void plainFieldsAreSplitOnCommas() {
+        assertArrayEquals(new String[] {"a@example.com", "secret123", "Ann", "Lee"},
+                UserImportService.parseCsvLine("a@example.com,secret123,Ann,Lee"));
+    }
+
+    @Test
+    void emptyFieldsAreKept() {
+        assertArrayEquals(new String[] {"", "x", "", ""}, UserImportService.parseCsvLine(",x,,"));
+        assertArrayEquals(new String[] {""}, UserImportService.parseCsvLine(""));
+    }
+
+    @Test
+    void quotedFieldsMayHoldCommasAndEscapedQuotes() {
+        assertArrayEquals(new String[] {"b@example.com", "pa,ss\"word", "O'Neil, Jr.", "Smith"},
+                UserImportService.parseCsvLine("b@example.com,\"pa,ss\"\"word\",\"O'Neil, Jr.\",Smith"));
+        assertArrayEquals(new String[] {"\"", ""}, UserImportService.parseCsvLine("\"\"\"\",\"\""));
+    }
+
+    @Test
+    void unterminatedQuoteIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> UserImportService.parseCsvLine("a,\"b,c"));
+    }
+}